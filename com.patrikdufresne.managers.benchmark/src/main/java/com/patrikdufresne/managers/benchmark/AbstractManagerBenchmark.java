@@ -0,0 +1,60 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.managers.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.patrikdufresne.managers.ManagerException;
+import com.patrikdufresne.managers.MockEntity;
+
+/**
+ * Benchmark of the {@link com.patrikdufresne.managers.AbstractManager} read functions: list, get and size.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AbstractManagerBenchmark {
+
+    @Benchmark
+    public List<MockEntity> list(DatabaseState db) throws ManagerException {
+        return db.managers.getMockEntityManager().list();
+    }
+
+    @Benchmark
+    public MockEntity get(DatabaseState db) throws ManagerException {
+        return db.managers.getMockEntityManager().get(db.randomId());
+    }
+
+    @Benchmark
+    public int size(DatabaseState db) throws ManagerException {
+        return db.managers.getMockEntityManager().size();
+    }
+
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.managers.benchmark;
+
+import org.hibernate.cfg.Configuration;
+import org.hibernate.cfg.Environment;
+
+import com.patrikdufresne.managers.ManagerException;
+import com.patrikdufresne.managers.MockManagers;
+
+/**
+ * Managers used by the benchmarks. Same mapping as the unit test managers, but without the SQL statement being
+ * printed to the console.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+public class BenchmarkManagers extends MockManagers {
+
+    /**
+     * Create a new managers.
+     *
+     * @param config
+     *            the database configuration
+     * @throws ManagerException
+     */
+    public BenchmarkManagers(Configuration config) throws ManagerException {
+        super(config);
+    }
+
+    /**
+     * This implementation disable the SQL output.
+     */
+    @Override
+    protected void configure(Configuration config) {
+        super.configure(config);
+        config.setProperty(Environment.SHOW_SQL, "false");//$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.managers.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.patrikdufresne.managers.H2DBConfigurations;
+import com.patrikdufresne.managers.ManagerException;
+import com.patrikdufresne.managers.MockEntity;
+
+/**
+ * Benchmark state holding a database populated with a given number of {@link MockEntity}. The database is created
+ * once per trial either in memory or in a temporary file.
+ * <p>
+ * Benchmarks are run from the shaded jar:
+ *
+ * <pre>
+ * mvn package
+ * java -jar com.patrikdufresne.managers.benchmark/target/benchmarks.jar -prof gc
+ * java -jar com.patrikdufresne.managers.benchmark/target/benchmarks.jar AbstractManagerBenchmark -p rows=1000 -p storage=mem
+ * </pre>
+ *
+ * @author Patrik Dufresne
+ *
+ */
+@State(Scope.Benchmark)
+public class DatabaseState {
+
+    /**
+     * Number of entities inserted per transaction while populating the database.
+     */
+    private static final int POPULATE_CHUNK = 10000;
+
+    /**
+     * Number of rows in the table.
+     */
+    @Param( { "1000", "100000", "1000000" })
+    public int rows;
+
+    /**
+     * Either <code>mem</code> or <code>file</code>.
+     */
+    @Param( { "mem", "file" })
+    public String storage;
+
+    /**
+     * The managers.
+     */
+    public BenchmarkManagers managers;
+
+    /**
+     * Identifiers of the entities created during the setup.
+     */
+    public int[] ids;
+
+    /**
+     * Random generator used to pick entities.
+     */
+    public Random random = new Random(0);
+
+    /**
+     * The database file (null for in memory database).
+     */
+    private File file;
+
+    /**
+     * Return a random identifier of an existing entity.
+     *
+     * @return the entity id.
+     */
+    public int randomId() {
+        return this.ids[this.random.nextInt(this.ids.length)];
+    }
+
+    /**
+     * Create a list of new entities (not persisted).
+     *
+     * @param count
+     *            number of entities
+     * @return the entities
+     */
+    public static List<MockEntity> newEntities(int count) {
+        List<MockEntity> list = new ArrayList<MockEntity>(count);
+        for (int i = 0; i < count; i++) {
+            MockEntity entity = new MockEntity();
+            entity.setName("entity" + i); //$NON-NLS-1$
+            list.add(entity);
+        }
+        return list;
+    }
+
+    /**
+     * Create the database and populate it.
+     *
+     * @throws Exception
+     */
+    @Setup
+    public void setupDatabase() throws Exception {
+        String url;
+        if ("file".equals(this.storage)) { //$NON-NLS-1$
+            this.file = File.createTempFile("managers-benchmark", ""); //$NON-NLS-1$ //$NON-NLS-2$
+            this.file.delete();
+            url = this.file.getAbsolutePath();
+        } else {
+            url = "jdbc:h2:mem:benchmark" + System.nanoTime(); //$NON-NLS-1$
+        }
+        Configuration config = H2DBConfigurations.create(url, true, false);
+        this.managers = new BenchmarkManagers(config);
+        populate();
+    }
+
+    /**
+     * Insert the entities by chunk to avoid keeping all of them in a single session.
+     *
+     * @throws ManagerException
+     */
+    private void populate() throws ManagerException {
+        this.ids = new int[this.rows];
+        int index = 0;
+        while (index < this.rows) {
+            List<MockEntity> list = newEntities(Math.min(POPULATE_CHUNK, this.rows - index));
+            this.managers.getMockEntityManager().add(list);
+            for (MockEntity e : list) {
+                this.ids[index++] = e.getId().intValue();
+            }
+        }
+    }
+
+    /**
+     * Close the database and delete the files.
+     */
+    @TearDown
+    public void closeDatabase() {
+        if (this.managers != null) {
+            this.managers.dispose();
+            this.managers = null;
+        }
+        if (this.file != null) {
+            for (String ext : new String[] { ".h2.db", ".trace.db", ".lock.db" }) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                new File(this.file.getAbsolutePath() + ext).delete();
+            }
+            this.file = null;
+        }
+    }
+
+}
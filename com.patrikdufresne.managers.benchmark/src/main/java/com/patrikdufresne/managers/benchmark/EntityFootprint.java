@@ -0,0 +1,88 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.managers.benchmark;
+
+import java.beans.PropertyChangeSupport;
+import java.util.List;
+
+import com.patrikdufresne.managers.H2DBConfigurations;
+import com.patrikdufresne.managers.ManagedObject;
+import com.patrikdufresne.managers.MockEntity;
+
+/**
+ * Measure the heap used per loaded {@link MockEntity}. The database is populated with the given number of rows (1M by
+ * default), every row is loaded and the used heap is compared before and after. The cost of the eager
+ * {@link PropertyChangeSupport} previously allocated by each {@link ManagedObject} is measured the same way to compare
+ * the footprint before and after the change support became lazy.
+ * <p>
+ * Run from the shaded jar with a large enough heap:
+ *
+ * <pre>
+ * java -Xmx4g -cp com.patrikdufresne.managers.benchmark/target/benchmarks.jar com.patrikdufresne.managers.benchmark.EntityFootprint 1000000
+ * </pre>
+ *
+ * @author Patrik Dufresne
+ *
+ */
+public class EntityFootprint {
+
+    /**
+     * Return the used heap after a full garbage collection.
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // Repeat until the value is stable
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            long value = runtime.totalMemory() - runtime.freeMemory();
+            if (value >= used) {
+                break;
+            }
+            used = value;
+        }
+        return used;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        DatabaseState db = new DatabaseState();
+        db.rows = rows;
+        db.storage = "mem"; //$NON-NLS-1$
+        db.setupDatabase();
+        try {
+            long before = usedHeap();
+            List<MockEntity> list = db.managers.getMockEntityManager().list();
+            long loaded = usedHeap();
+
+            // Allocate what each entity used to allocate eagerly
+            PropertyChangeSupport[] eager = new PropertyChangeSupport[list.size()];
+            for (int i = 0; i < eager.length; i++) {
+                eager[i] = new PropertyChangeSupport(list.get(i));
+            }
+            long withEager = usedHeap();
+
+            System.out.println("Loaded entities:             " + list.size()); //$NON-NLS-1$
+            System.out.println("Bytes per entity (lazy):     " + (loaded - before) / list.size()); //$NON-NLS-1$
+            System.out.println("Bytes per entity (eager):    " + (withEager - before) / list.size()); //$NON-NLS-1$
+            System.out.println("Eager change support cost:   " + (withEager - loaded) / eager.length); //$NON-NLS-1$
+        } finally {
+            db.closeDatabase();
+        }
+    }
+
+}
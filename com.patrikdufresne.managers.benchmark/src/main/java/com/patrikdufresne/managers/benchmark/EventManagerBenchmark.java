@@ -0,0 +1,109 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.managers.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.patrikdufresne.managers.EventManager;
+import com.patrikdufresne.managers.EventTable;
+import com.patrikdufresne.managers.IManagerObserver;
+import com.patrikdufresne.managers.ManagedObject;
+import com.patrikdufresne.managers.ManagerEvent;
+import com.patrikdufresne.managers.MockEntity;
+
+/**
+ * Benchmark of {@link EventManager#sendEvents(EventTable)}. This benchmark doesn't use the database: it measure the
+ * cost of grouping the event table and dispatching the events to the registered observers.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class EventManagerBenchmark {
+
+    /**
+     * Observer counting the number of object received.
+     */
+    private static class CountingObserver implements IManagerObserver {
+
+        int count;
+
+        @Override
+        public void handleManagerEvent(ManagerEvent event) {
+            this.count += event.objects.size();
+        }
+
+    }
+
+    /**
+     * Number of entries in the event table.
+     */
+    @Param( { "100", "10000" })
+    public int events;
+
+    /**
+     * Number of observers registered to the event manager.
+     */
+    @Param( { "1", "100" })
+    public int observers;
+
+    private EventManager eventManager;
+
+    private EventTable table;
+
+    private CountingObserver observer;
+
+    @Setup
+    public void setup() {
+        this.observer = new CountingObserver();
+        this.eventManager = new EventManager();
+        // Half the observers are registered on the entity class, the others on
+        // the super class.
+        for (int i = 0; i < this.observers; i++) {
+            this.eventManager.hook(ManagerEvent.ALL, i % 2 == 0 ? MockEntity.class : ManagedObject.class, this.observer);
+        }
+        this.table = new EventTable();
+        for (int i = 0; i < this.events; i++) {
+            MockEntity entity = new MockEntity();
+            entity.setId(Integer.valueOf(i));
+            this.table.add(i % 3 == 0 ? ManagerEvent.ADD : ManagerEvent.UPDATE, entity);
+        }
+    }
+
+    @Benchmark
+    public int sendEvents() {
+        this.eventManager.sendEvents(this.table);
+        return this.observer.count;
+    }
+
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.managers.benchmark;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.patrikdufresne.managers.ManagedObjectUtils;
+import com.patrikdufresne.managers.MockEntity;
+
+/**
+ * Benchmark of {@link ManagedObjectUtils#copyProperties(Object, Object)}, the function called for every tracked
+ * instance on update.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class ManagedObjectUtilsBenchmark {
+
+    private MockEntity orig;
+
+    private MockEntity dest;
+
+    @Setup
+    public void setup() {
+        this.orig = new MockEntity();
+        this.orig.setId(Integer.valueOf(1));
+        this.orig.setName("orig"); //$NON-NLS-1$
+        this.orig.setCreationDate(new Date());
+        this.orig.setModificationDate(new Date());
+        this.dest = new MockEntity();
+    }
+
+    @Benchmark
+    public MockEntity copyProperties() throws IllegalAccessException, InvocationTargetException {
+        ManagedObjectUtils.copyProperties(this.orig, this.dest);
+        return this.dest;
+    }
+
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.managers.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.patrikdufresne.managers.ManagerException;
+import com.patrikdufresne.managers.MockEntity;
+
+/**
+ * Benchmark of the {@link com.patrikdufresne.managers.Managers} CRUD functions: addAll, updateAll and removeAll.
+ * <p>
+ * Each invocation process a collection of <code>batch</code> entities within a single transaction. The addAll
+ * benchmark keep adding rows to the table, so the table grows during the measurement.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ManagersBenchmark {
+
+    /**
+     * State holding the entities to be processed by an invocation.
+     */
+    @State(Scope.Thread)
+    public static class BatchState {
+
+        /**
+         * Number of entities per transaction.
+         */
+        @Param( { "1", "100" })
+        public int batch;
+
+        /**
+         * Existing entities, used by update and remove.
+         */
+        public List<MockEntity> entities;
+
+        /**
+         * Load a random set of existing entities to be updated.
+         *
+         * @param db
+         *            the database
+         * @throws ManagerException
+         */
+        @Setup(Level.Iteration)
+        public void loadEntities(DatabaseState db) throws ManagerException {
+            this.entities = new ArrayList<MockEntity>(this.batch);
+            for (int i = 0; i < this.batch; i++) {
+                this.entities.add(db.managers.getMockEntityManager().get(db.randomId()));
+            }
+        }
+
+    }
+
+    /**
+     * State creating, before each iteration, the entities to be removed by the invocations of the iteration.
+     */
+    @State(Scope.Thread)
+    public static class RemoveState {
+
+        /**
+         * Number of invocations per iteration of the removeAll benchmark.
+         */
+        public static final int INVOCATIONS = 1000;
+
+        /**
+         * The entities to be removed, one list per invocation.
+         */
+        private List<List<MockEntity>> pool;
+
+        /**
+         * Index of the next list to be removed.
+         */
+        private int next;
+
+        /**
+         * Add the entities to be removed by the invocations of this iteration.
+         *
+         * @param db
+         *            the database
+         * @param batch
+         *            the batch state
+         * @throws ManagerException
+         */
+        @Setup(Level.Iteration)
+        public void addEntities(DatabaseState db, BatchState batch) throws ManagerException {
+            this.pool = new ArrayList<List<MockEntity>>(INVOCATIONS);
+            for (int i = 0; i < INVOCATIONS; i++) {
+                List<MockEntity> entities = DatabaseState.newEntities(batch.batch);
+                db.managers.addAll(entities);
+                this.pool.add(entities);
+            }
+            this.next = 0;
+        }
+
+        /**
+         * Return the entities to be removed by the current invocation.
+         *
+         * @return the entities
+         */
+        public List<MockEntity> next() {
+            return this.pool.get(this.next++);
+        }
+
+    }
+
+    @Benchmark
+    public List<MockEntity> addAll(DatabaseState db, BatchState batch) throws ManagerException {
+        List<MockEntity> list = DatabaseState.newEntities(batch.batch);
+        db.managers.addAll(list);
+        return list;
+    }
+
+    @Benchmark
+    public List<MockEntity> updateAll(DatabaseState db, BatchState batch) throws ManagerException {
+        String name = Long.toString(System.nanoTime());
+        for (MockEntity e : batch.entities) {
+            e.setName(name);
+        }
+        db.managers.updateAll(batch.entities);
+        return batch.entities;
+    }
+
+    /**
+     * Each iteration runs exactly {@link RemoveState#INVOCATIONS} invocations to consume the entities created by the
+     * iteration setup.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 3, batchSize = RemoveState.INVOCATIONS)
+    @Measurement(iterations = 5, batchSize = RemoveState.INVOCATIONS)
+    public List<MockEntity> removeAll(DatabaseState db, RemoveState remove) throws ManagerException {
+        List<MockEntity> entities = remove.next();
+        db.managers.removeAll(entities);
+        return entities;
+    }
+
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.managers.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.patrikdufresne.managers.EventManager;
+import com.patrikdufresne.managers.EventTable;
+import com.patrikdufresne.managers.IManagerObserver;
+import com.patrikdufresne.managers.ManagerEvent;
+
+/**
+ * Benchmark of the grouping done by {@link EventManager#sendEvents(EventTable)} for large transactions touching many
+ * classes. The average time should grow linearly with the number of events, whatever the number of classes.
+ * <p>
+ * The entity classes are copies of {@link Entity} defined by distinct class loaders, so the benchmark doesn't depend
+ * on a mapped model.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class SendEventsBenchmark {
+
+    /**
+     * The entity used to fill the event table.
+     */
+    public static class Entity {
+        // Nothing to do
+    }
+
+    /**
+     * Class loader defining its own copy of {@link Entity}.
+     */
+    private static class EntityClassLoader extends ClassLoader {
+
+        EntityClassLoader() {
+            super(SendEventsBenchmark.class.getClassLoader());
+        }
+
+        Class<?> defineEntity(byte[] bytes) {
+            return defineClass(Entity.class.getName(), bytes, 0, bytes.length);
+        }
+
+    }
+
+    /**
+     * Observer counting the number of object received.
+     */
+    private static class CountingObserver implements IManagerObserver {
+
+        int count;
+
+        @Override
+        public void handleManagerEvent(ManagerEvent event) {
+            this.count += event.objects.size();
+        }
+
+    }
+
+    /**
+     * Number of entries in the event table.
+     */
+    @Param( { "1000", "10000", "100000" })
+    public int events;
+
+    /**
+     * Number of distinct entity classes.
+     */
+    @Param( { "1", "50" })
+    public int classes;
+
+    private EventManager eventManager;
+
+    private EventTable table;
+
+    private CountingObserver observer;
+
+    /**
+     * Read the byte code of the entity class.
+     */
+    private static byte[] readEntityClass() throws IOException {
+        InputStream in = Entity.class.getResourceAsStream(Entity.class.getName().substring(Entity.class.getPackage().getName().length() + 1) + ".class");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int len;
+            while ((len = in.read(buf)) > 0) {
+                out.write(buf, 0, len);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        byte[] bytes = readEntityClass();
+        Class<?>[] types = new Class<?>[this.classes];
+        for (int i = 0; i < this.classes; i++) {
+            types[i] = new EntityClassLoader().defineEntity(bytes);
+        }
+        this.observer = new CountingObserver();
+        this.eventManager = new EventManager();
+        this.eventManager.hook(ManagerEvent.ALL, Object.class, this.observer);
+        this.table = new EventTable();
+        int[] eventTypes = new int[] { ManagerEvent.ADD, ManagerEvent.UPDATE, ManagerEvent.REMOVE };
+        for (int i = 0; i < this.events; i++) {
+            this.table.add(eventTypes[i % eventTypes.length], types[i % this.classes].newInstance());
+        }
+    }
+
+    @Benchmark
+    public int sendEvents() {
+        this.eventManager.sendEvents(this.table);
+        return this.observer.count;
+    }
+
+}
@@ -0,0 +1,335 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.managers.processor;
+
+import java.beans.Introspector;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+
+/**
+ * Annotation processor generating a <code>ManagedObjectAccessor</code> for each <code>@Entity</code> class extending
+ * <code>ManagedObject</code>. The generated class is named after the entity class with the <code>_Accessor</code>
+ * suffix and call the getters and setters directly, without reflection.
+ * <p>
+ * The processor is enabled by adding this artifact to the compile classpath of the project declaring the entities.
+ * 
+ * @author Patrik Dufresne
+ * 
+ */
+@SupportedAnnotationTypes(ManagedObjectAccessorProcessor.ENTITY)
+public class ManagedObjectAccessorProcessor extends AbstractProcessor {
+
+    /**
+     * The entity annotation.
+     */
+    static final String ENTITY = "javax.persistence.Entity"; //$NON-NLS-1$
+
+    /**
+     * The transient annotation.
+     */
+    private static final String TRANSIENT = "javax.persistence.Transient"; //$NON-NLS-1$
+
+    /**
+     * The managed object class.
+     */
+    private static final String MANAGED_OBJECT = "com.patrikdufresne.managers.ManagedObject"; //$NON-NLS-1$
+
+    /**
+     * The generated interface.
+     */
+    private static final String ACCESSOR = "com.patrikdufresne.managers.ManagedObjectAccessor"; //$NON-NLS-1$
+
+    /**
+     * Suffix of the generated class.
+     */
+    private static final String SUFFIX = "_Accessor"; //$NON-NLS-1$
+
+    /**
+     * The property of an entity.
+     */
+    private static class Property {
+
+        ExecutableElement getter;
+
+        ExecutableElement setter;
+
+        String name;
+
+        TypeMirror type;
+
+    }
+
+    /**
+     * The entities already generated. Used to avoid generating twice the same class over many rounds.
+     */
+    private final Set<String> generated = new HashSet<String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement managedObject = this.processingEnv.getElementUtils().getTypeElement(MANAGED_OBJECT);
+        if (managedObject == null) {
+            return false;
+        }
+        TypeMirror managedObjectType = this.processingEnv.getTypeUtils().erasure(managedObject.asType());
+        for (TypeElement annotation : annotations) {
+            for (TypeElement type : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(annotation))) {
+                if (type.getKind() == ElementKind.CLASS
+                        && isAccessible(type)
+                        && this.processingEnv.getTypeUtils().isSubtype(this.processingEnv.getTypeUtils().erasure(type.asType()), managedObjectType)
+                        && this.generated.add(type.getQualifiedName().toString())) {
+                    generate(type);
+                }
+            }
+        }
+        // Let other processors handle the entities
+        return false;
+    }
+
+    /**
+     * Check if the class is accessible from a class of the same package.
+     */
+    private static boolean isAccessible(TypeElement type) {
+        Element element = type;
+        while (element instanceof TypeElement) {
+            if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            if (((TypeElement) element).getNestingKind() == NestingKind.MEMBER && !element.getModifiers().contains(Modifier.STATIC)) {
+                return false;
+            }
+            element = element.getEnclosingElement();
+        }
+        return true;
+    }
+
+    /**
+     * Return the properties of the given class, sorted by name. Only the properties having a public getter and
+     * setter, not annotated with <code>@Transient</code>, are returned.
+     */
+    private Map<String, Property> properties(TypeElement type) {
+        DeclaredType declaredType = (DeclaredType) type.asType();
+        List<ExecutableElement> methods = ElementFilter.methodsIn(this.processingEnv.getElementUtils().getAllMembers(type));
+        Map<String, Property> properties = new TreeMap<String, Property>();
+        for (ExecutableElement getter : methods) {
+            String name = getterPropertyName(getter);
+            if (name == null || "class".equals(name)) { //$NON-NLS-1$
+                continue;
+            }
+            // Resolve the type variables of generic super classes
+            TypeMirror propertyType = this.processingEnv.getTypeUtils().erasure(
+                    ((ExecutableType) this.processingEnv.getTypeUtils().asMemberOf(declaredType, getter)).getReturnType());
+            for (ExecutableElement setter : methods) {
+                if (isSetterOf(declaredType, setter, name, propertyType)) {
+                    Property property = new Property();
+                    property.getter = getter;
+                    property.setter = setter;
+                    property.name = name;
+                    property.type = propertyType;
+                    if (!isTransient(getter) && !isTransient(setter)) {
+                        properties.put(name, property);
+                    }
+                    break;
+                }
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Return the property name of the given getter or null if the method is not a getter.
+     */
+    private static String getterPropertyName(ExecutableElement method) {
+        if (!isPublicMethod(method) || !method.getParameters().isEmpty()) {
+            return null;
+        }
+        String name = method.getSimpleName().toString();
+        TypeKind kind = method.getReturnType().getKind();
+        if (name.startsWith("get") && name.length() > 3 && kind != TypeKind.VOID) { //$NON-NLS-1$
+            return Introspector.decapitalize(name.substring(3));
+        }
+        if (name.startsWith("is") && name.length() > 2 && kind == TypeKind.BOOLEAN) { //$NON-NLS-1$
+            return Introspector.decapitalize(name.substring(2));
+        }
+        return null;
+    }
+
+    /**
+     * Check if the method is the setter of the given property.
+     */
+    private boolean isSetterOf(DeclaredType declaredType, ExecutableElement method, String name, TypeMirror propertyType) {
+        return isPublicMethod(method)
+                && method.getParameters().size() == 1
+                && method.getReturnType().getKind() == TypeKind.VOID
+                && method.getSimpleName().toString().startsWith("set") //$NON-NLS-1$
+                && name.equals(Introspector.decapitalize(method.getSimpleName().toString().substring(3)))
+                && this.processingEnv.getTypeUtils().isSameType(
+                        this.processingEnv.getTypeUtils().erasure(
+                                ((ExecutableType) this.processingEnv.getTypeUtils().asMemberOf(declaredType, method)).getParameterTypes().get(0)),
+                        propertyType);
+    }
+
+    /**
+     * Check if the method may be called by the generated accessor.
+     */
+    private static boolean isPublicMethod(ExecutableElement method) {
+        return method.getModifiers().contains(Modifier.PUBLIC) && !method.getModifiers().contains(Modifier.STATIC) && method.getThrownTypes().isEmpty();
+    }
+
+    /**
+     * Check if the method is annotated with <code>@Transient</code>.
+     */
+    private static boolean isTransient(ExecutableElement method) {
+        for (AnnotationMirror annotation : method.getAnnotationMirrors()) {
+            if (TRANSIENT.equals(((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().toString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return the name used to cast a property value.
+     */
+    private String castName(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return this.processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName().toString();
+        }
+        return type.toString();
+    }
+
+    /**
+     * Generate the accessor of the given entity class.
+     */
+    private void generate(TypeElement type) {
+        PackageElement pkg = this.processingEnv.getElementUtils().getPackageOf(type);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString(); //$NON-NLS-1$
+        String binaryName = this.processingEnv.getElementUtils().getBinaryName(type).toString();
+        String simpleName = (packageName.length() > 0 ? binaryName.substring(packageName.length() + 1) : binaryName) + SUFFIX;
+        String beanName = this.processingEnv.getTypeUtils().erasure(type.asType()).toString();
+        Property[] properties = properties(type).values().toArray(new Property[0]);
+
+        PrintWriter out;
+        try {
+            out = new PrintWriter(this.processingEnv
+                    .getFiler()
+                    .createSourceFile((packageName.length() > 0 ? packageName + "." : "") + simpleName, type).openWriter()); //$NON-NLS-1$ //$NON-NLS-2$
+        } catch (IOException e) {
+            this.processingEnv.getMessager().printMessage(Kind.ERROR, "Fail to generate the accessor: " + e.getMessage(), type); //$NON-NLS-1$
+            return;
+        }
+        try {
+            if (packageName.length() > 0) {
+                out.println("package " + packageName + ";"); //$NON-NLS-1$ //$NON-NLS-2$
+                out.println();
+            }
+            out.println("/**"); //$NON-NLS-1$
+            out.println(" * Accessor of {@link " + beanName + "}, generated by " + getClass().getName() + ". Do not edit."); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            out.println(" */"); //$NON-NLS-1$
+            out.println("@SuppressWarnings(\"unchecked\")"); //$NON-NLS-1$
+            out.println("public final class " + simpleName + " implements " + ACCESSOR + " {"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            out.println();
+
+            // Property names
+            out.print("    private static final String[] PROPERTY_NAMES = {"); //$NON-NLS-1$
+            for (int i = 0; i < properties.length; i++) {
+                out.print((i > 0 ? ", \"" : " \"") + properties[i].name + "\""); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            }
+            out.println(" };"); //$NON-NLS-1$
+            out.println();
+            out.println("    public String[] getPropertyNames() {"); //$NON-NLS-1$
+            out.println("        return PROPERTY_NAMES.clone();"); //$NON-NLS-1$
+            out.println("    }"); //$NON-NLS-1$
+            out.println();
+
+            // Copy
+            out.println("    public void copy(Object orig, Object dest) {"); //$NON-NLS-1$
+            out.println("        " + beanName + " o = (" + beanName + ") orig;"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            out.println("        " + beanName + " d = (" + beanName + ") dest;"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            for (int i = 0; i < properties.length; i++) {
+                String getter = properties[i].getter.getSimpleName().toString();
+                out.println("        " + properties[i].type + " v" + i + " = o." + getter + "();"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+                out.println("        if (v" + i + " != d." + getter + "()) {"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                out.println("            d." + properties[i].setter.getSimpleName() + "(v" + i + ");"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                out.println("        }"); //$NON-NLS-1$
+            }
+            out.println("    }"); //$NON-NLS-1$
+            out.println();
+
+            // Read
+            out.println("    public Object read(Object bean, int index) {"); //$NON-NLS-1$
+            out.println("        " + beanName + " b = (" + beanName + ") bean;"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            out.println("        switch (index) {"); //$NON-NLS-1$
+            for (int i = 0; i < properties.length; i++) {
+                out.println("        case " + i + ":"); //$NON-NLS-1$ //$NON-NLS-2$
+                out.println("            return b." + properties[i].getter.getSimpleName() + "();"); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            out.println("        default:"); //$NON-NLS-1$
+            out.println("            throw new IndexOutOfBoundsException(String.valueOf(index));"); //$NON-NLS-1$
+            out.println("        }"); //$NON-NLS-1$
+            out.println("    }"); //$NON-NLS-1$
+            out.println();
+
+            // Write
+            out.println("    public void write(Object bean, int index, Object value) {"); //$NON-NLS-1$
+            out.println("        " + beanName + " b = (" + beanName + ") bean;"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            out.println("        switch (index) {"); //$NON-NLS-1$
+            for (int i = 0; i < properties.length; i++) {
+                out.println("        case " + i + ":"); //$NON-NLS-1$ //$NON-NLS-2$
+                out.println("            b." + properties[i].setter.getSimpleName() + "((" + castName(properties[i].type) + ") value);"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                out.println("            break;"); //$NON-NLS-1$
+            }
+            out.println("        default:"); //$NON-NLS-1$
+            out.println("            throw new IndexOutOfBoundsException(String.valueOf(index));"); //$NON-NLS-1$
+            out.println("        }"); //$NON-NLS-1$
+            out.println("    }"); //$NON-NLS-1$
+            out.println();
+            out.println("}"); //$NON-NLS-1$
+        } finally {
+            out.close();
+        }
+    }
+
+}
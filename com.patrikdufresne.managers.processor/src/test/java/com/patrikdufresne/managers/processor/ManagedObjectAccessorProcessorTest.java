@@ -0,0 +1,247 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.managers.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Check behavior of {@link ManagedObjectAccessorProcessor}. The test entities are compiled with the processor using
+ * stubs of the managers and persistence classes.
+ * 
+ * @author Patrik Dufresne
+ * 
+ */
+public class ManagedObjectAccessorProcessorTest {
+
+    /**
+     * Java source defined by a string.
+     */
+    private static class Source extends SimpleJavaFileObject {
+
+        private final String code;
+
+        Source(String className, String code) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return this.code;
+        }
+
+    }
+
+    private static final Source[] STUBS = {
+            new Source("javax.persistence.Entity", "package javax.persistence; public @interface Entity {}"),
+            new Source("javax.persistence.Transient", "package javax.persistence; public @interface Transient {}"),
+            new Source("com.patrikdufresne.managers.ManagedObject", "package com.patrikdufresne.managers; public class ManagedObject {}"),
+            new Source("com.patrikdufresne.managers.ManagedObjectAccessor", "package com.patrikdufresne.managers; public interface ManagedObjectAccessor {"
+                    + " void copy(Object orig, Object dest);"
+                    + " String[] getPropertyNames();"
+                    + " Object read(Object bean, int index);"
+                    + " void write(Object bean, int index, Object value); }") };
+
+    private static final Source BASE = new Source("test.Base", "package test;"
+            + "public abstract class Base<T> extends com.patrikdufresne.managers.ManagedObject {"
+            + "  private T value;"
+            + "  public T getValue() { return value; }"
+            + "  public void setValue(T value) { this.value = value; }"
+            + "}");
+
+    private static final Source SAMPLE = new Source("test.Sample", "package test;"
+            + "@javax.persistence.Entity public class Sample extends Base<String> {"
+            + "  private boolean active;"
+            + "  private int count;"
+            + "  private String writeOnly;"
+            + "  public boolean isActive() { return active; }"
+            + "  public void setActive(boolean active) { this.active = active; }"
+            + "  public int getCount() { return count; }"
+            + "  public void setCount(int count) { this.count = count; }"
+            + "  public String getReadOnly() { return \"r\"; }"
+            + "  public void setWriteOnly(String value) { this.writeOnly = value; }"
+            + "  @javax.persistence.Transient public String getTemp() { return null; }"
+            + "  public void setTemp(String value) { }"
+            + "  @javax.persistence.Entity public static class Nested extends com.patrikdufresne.managers.ManagedObject {"
+            + "    private Boolean flag;"
+            + "    public Boolean isFlag() { return flag; }"
+            + "    public void setFlag(Boolean flag) { this.flag = flag; }"
+            + "    public Boolean getOther() { return flag; }"
+            + "    public void setOther(Boolean flag) { this.flag = flag; }"
+            + "  }"
+            + "  @javax.persistence.Entity private static class Hidden extends com.patrikdufresne.managers.ManagedObject { }"
+            + "  @javax.persistence.Entity public class Inner extends com.patrikdufresne.managers.ManagedObject { }"
+            + "}");
+
+    private static final Source PLAIN = new Source("test.Plain", "package test;"
+            + "public class Plain extends com.patrikdufresne.managers.ManagedObject {"
+            + "  private String name;"
+            + "  public String getName() { return name; }"
+            + "  public void setName(String name) { this.name = name; }"
+            + "}");
+
+    private File dir;
+
+    private ClassLoader loader;
+
+    @Before
+    public void compile() throws Exception {
+        this.dir = File.createTempFile("processor", "");
+        this.dir.delete();
+        this.dir.mkdir();
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        List<JavaFileObject> sources = new ArrayList<JavaFileObject>(Arrays.asList(STUBS));
+        sources.addAll(Arrays.asList(BASE, SAMPLE, PLAIN));
+        CompilationTask task = compiler.getTask(
+                null,
+                fileManager,
+                diagnostics,
+                Arrays.asList("-d", this.dir.getPath(), "-s", this.dir.getPath()),
+                null,
+                sources);
+        task.setProcessors(Arrays.asList(new ManagedObjectAccessorProcessor()));
+        boolean success = task.call().booleanValue();
+        fileManager.close();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                throw new AssertionError(diagnostic.getMessage(Locale.ROOT));
+            }
+        }
+        assertTrue(success);
+        this.loader = new URLClassLoader(new URL[] { this.dir.toURI().toURL() }, getClass().getClassLoader());
+    }
+
+    @After
+    public void deleteFiles() {
+        delete(this.dir);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Check if the accessor class was generated.
+     */
+    private boolean exists(String className) {
+        try {
+            Class.forName(className, false, this.loader);
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Call a method of the generated accessor using reflection since the accessor interface is a stub.
+     */
+    private static Object call(Object target, String name, Object... args) throws Exception {
+        for (Method method : target.getClass().getMethods()) {
+            if (method.getName().equals(name) && method.getParameterTypes().length == args.length) {
+                return method.invoke(target, args);
+            }
+        }
+        throw new NoSuchMethodException(name);
+    }
+
+    private Object newInstance(String className) throws Exception {
+        return Class.forName(className, true, this.loader).newInstance();
+    }
+
+    @Test
+    public void testProcess_WithEntity_ReadWriteProperties() throws Exception {
+        Object accessor = newInstance("test.Sample_Accessor");
+        // read-only, write-only and transient properties are excluded
+        assertEquals(Arrays.asList("active", "count", "value"), Arrays.asList((String[]) call(accessor, "getPropertyNames")));
+
+        Object sample = newInstance("test.Sample");
+        call(accessor, "write", sample, 0, Boolean.TRUE);
+        call(accessor, "write", sample, 1, Integer.valueOf(3));
+        call(accessor, "write", sample, 2, "v");
+        assertEquals(Boolean.TRUE, call(sample, "isActive"));
+        assertEquals(Integer.valueOf(3), call(sample, "getCount"));
+        assertEquals("v", call(sample, "getValue"));
+        assertEquals(Boolean.TRUE, call(accessor, "read", sample, 0));
+        assertEquals(Integer.valueOf(3), call(accessor, "read", sample, 1));
+        assertEquals("v", call(accessor, "read", sample, 2));
+
+        Object copy = newInstance("test.Sample");
+        call(accessor, "copy", sample, copy);
+        assertEquals(Boolean.TRUE, call(copy, "isActive"));
+        assertEquals(Integer.valueOf(3), call(copy, "getCount"));
+        assertEquals("v", call(copy, "getValue"));
+    }
+
+    @Test(expected = ClassCastException.class)
+    public void testProcess_WithGenericProperty_CastToTypeArgument() throws Throwable {
+        Object accessor = newInstance("test.Sample_Accessor");
+        try {
+            call(accessor, "write", newInstance("test.Sample"), 2, Integer.valueOf(1));
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Test
+    public void testProcess_WithBoxedBooleanIsGetter_NotAProperty() throws Exception {
+        Object accessor = newInstance("test.Sample$Nested_Accessor");
+        assertEquals(Arrays.asList("other"), Arrays.asList((String[]) call(accessor, "getPropertyNames")));
+    }
+
+    @Test
+    public void testProcess_WithoutAccessibleEntity_NoAccessor() {
+        assertTrue(exists("test.Sample_Accessor"));
+        assertFalse(exists("test.Sample$Hidden_Accessor"));
+        assertFalse(exists("test.Sample$Inner_Accessor"));
+        assertFalse(exists("test.Plain_Accessor"));
+        assertFalse(exists("test.Base_Accessor"));
+    }
+
+}
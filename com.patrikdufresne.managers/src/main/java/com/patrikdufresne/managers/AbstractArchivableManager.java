@@ -15,11 +15,14 @@
  */
 package com.patrikdufresne.managers;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 
+import org.hibernate.Criteria;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 
 /**
@@ -32,6 +35,16 @@ import org.hibernate.criterion.Restrictions;
  */
 public abstract class AbstractArchivableManager<T extends ArchivableObject> extends AbstractManager<T> implements IArchivableManager<T> {
 
+    /**
+     * The number of archived records.
+     */
+    final CachedCount cachedArchivedSize = new CachedCount();
+
+    /**
+     * The snapshot returned by {@link #listArchived()}.
+     */
+    final CachedList<T> cachedArchivedList = new CachedList<T>();
+
     /**
      * Create a new manager.
      */
@@ -72,21 +85,43 @@ public abstract class AbstractArchivableManager<T extends ArchivableObject> exte
     }
 
     /**
-     * This implementation return the un-archived object. class.
+     * This implementation return the criteria to list the un-archived objects.
      * 
-     * @see com.patrikdufresne.managers.IManager#list()
+     * @see com.patrikdufresne.managers.AbstractManager#createListCriteria()
      */
     @Override
-    public List<T> list() throws ManagerException {
-        return getManagers().query(new Query<List<T>>() {
-            @SuppressWarnings("unchecked")
+    protected Criteria createListCriteria() {
+        return super.createListCriteria().add(Restrictions.isNull(ArchivableObject.ARCHIVED_DATE));
+    }
+
+    /**
+     * Create the criteria used to list the archived objects. Must be called
+     * within a transaction.
+     * 
+     * @return the criteria
+     */
+    protected Criteria createListArchivedCriteria() {
+        return ManagerContext.getDefaultSession().createCriteria(objectClass()).add(Restrictions.isNotNull(ArchivableObject.ARCHIVED_DATE));
+    }
+
+    /**
+     * Read the archived objects one by one without loading the complete list
+     * in memory. The objects are read within a read-only transaction. When
+     * called within an existing transaction, the objects are read within that
+     * transaction and kept in its session.
+     * 
+     * @param visitor
+     *            the visitor called for each archived object
+     * @throws ManagerException
+     */
+    public void forEachArchived(final IManagedObjectVisitor<? super T> visitor) throws ManagerException {
+        // The objects of an existing transaction must stay in its session
+        final boolean evict = ManagerContext.getDefaultSession() == null;
+        getManagers().queryReadOnly(new Query<Void>() {
             @Override
-            public List<T> run() throws ManagerException {
-                return (List<T>) ManagerContext
-                        .getDefaultSession()
-                        .createCriteria(objectClass())
-                        .add(Restrictions.isNull(ArchivableObject.ARCHIVED_DATE))
-                        .list();
+            public Void run() throws ManagerException {
+                scroll(createListArchivedCriteria(), visitor, evict);
+                return null;
             }
         });
     }
@@ -99,17 +134,83 @@ public abstract class AbstractArchivableManager<T extends ArchivableObject> exte
      * @throws ManagerException
      */
     public List<T> listArchived() throws ManagerException {
-        return getManagers().query(new Query<List<T>>() {
+        Query<List<T>> query = new Query<List<T>>() {
             @SuppressWarnings("unchecked")
             @Override
             public List<T> run() throws ManagerException {
-                return (List<T>) ManagerContext
-                        .getDefaultSession()
-                        .createCriteria(objectClass())
-                        .add(Restrictions.isNotNull(ArchivableObject.ARCHIVED_DATE))
-                        .list();
+                return (List<T>) createListArchivedCriteria().list();
             }
-        });
+        };
+        if (!isListCacheEnabled()) {
+            return getManagers().queryReadOnly(query);
+        }
+        hookCacheObserver();
+        return this.cachedArchivedList.get(getManagers(), query);
+    }
+
+    /**
+     * This implementation also drop the archived list snapshot.
+     */
+    @Override
+    void invalidateCachedLists() {
+        super.invalidateCachedLists();
+        this.cachedArchivedList.invalidate();
+    }
+
+    /**
+     * This implementation also drop the archived count.
+     */
+    @Override
+    void invalidateCachedSizes() {
+        super.invalidateCachedSizes();
+        this.cachedArchivedSize.invalidate();
+    }
+
+    /**
+     * Return the number of archived objects. When the size cache is enabled,
+     * the count is queried once then maintained using the manager events.
+     * 
+     * @return the number of archived objects
+     * @throws ManagerException
+     */
+    public int sizeArchived() throws ManagerException {
+        Query<Number> query = new Query<Number>() {
+            @Override
+            public Number run() throws ManagerException {
+                return (Number) createListArchivedCriteria().setProjection(Projections.rowCount()).uniqueResult();
+            }
+        };
+        if (!isSizeCacheEnabled()) {
+            return getManagers().queryReadOnly(query).intValue();
+        }
+        hookCacheObserver();
+        return this.cachedArchivedSize.get(getManagers(), query);
+    }
+
+    /**
+     * This implementation update the archived and un-archived counts. Since an
+     * update may archive or restore an object, the counts are invalidated
+     * unless the archived date is known to be unchanged.
+     */
+    @Override
+    void updateCachedSize(ManagerEvent event) {
+        if (event.type == ManagerEvent.UPDATE) {
+            if (event.properties != null && !Arrays.asList(event.properties).contains(ArchivableObject.ARCHIVED_DATE)) {
+                return;
+            }
+            this.cachedSize.invalidate();
+            this.cachedArchivedSize.invalidate();
+            return;
+        }
+        int archived = 0;
+        for (Object o : event.objects) {
+            if (((ArchivableObject) o).getArchivedDate() != null) {
+                archived++;
+            }
+        }
+        int sign = event.type == ManagerEvent.REMOVE ? -1 : 1;
+        this.cachedSize.add(sign * (event.objects.size() - archived));
+        this.cachedArchivedSize.add(sign * archived);
     }
 
     /**
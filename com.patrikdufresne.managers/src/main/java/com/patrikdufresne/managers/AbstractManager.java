@@ -20,17 +20,66 @@ import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 
+import org.hibernate.Criteria;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.StatelessSession;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.engine.spi.SessionImplementor;
 
 /**
  * This implementation of {@link IManager} provide basic feature to make it easier to implement the interface.
  */
 public abstract class AbstractManager<T extends ManagedObject> implements IManager<T> {
+    /**
+     * Default number of rows fetched at once by {@link #forEach(IManagedObjectVisitor)}.
+     */
+    public static final int DEFAULT_FETCH_SIZE = 500;
+
+    /**
+     * Name of the identifier property.
+     */
+    private static final String ID = "id"; //$NON-NLS-1$
+
     /**
      * Define the managers.
      */
     private Managers managers;
 
+    /**
+     * The JDBC fetch size used to scroll the records.
+     */
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+
+    /**
+     * The number of records returned by {@link #size()}.
+     */
+    final CachedCount cachedSize = new CachedCount();
+
+    /**
+     * The snapshot returned by {@link #list()}.
+     */
+    final CachedList<T> cachedList = new CachedList<T>();
+
+    /**
+     * True to keep the result of {@link #list()}.
+     */
+    private boolean listCacheEnabled;
+
+    /**
+     * True to keep the result of {@link #size()}.
+     */
+    private boolean sizeCacheEnabled = true;
+
+    /**
+     * Observer maintaining the cached counts and lists. Null until used.
+     */
+    private IManagerObserver cacheObserver;
+
     /**
      * Create a new manager.
      */
@@ -87,6 +136,48 @@ public abstract class AbstractManager<T extends ManagedObject> implements IManag
         addObserver(eventType, objectClass(), observer);
     }
 
+    /**
+     * This implementation insert the objects using an Hibernate {@link StatelessSession} sharing the connection of the
+     * current transaction. The objects are not registered in the session nor in the object identity tracker, avoiding
+     * the cost of the persistence context and of the dirty checking at flush. The add event are added to the event
+     * table of the transaction to be sent as one event per class, so every object is still referenced until the
+     * transaction is committed: the memory grows with the number of objects.
+     * <p>
+     * Only {@link #preAddObject(ManagedObject)} and {@link #postAddObject(ManagedObject)} are called.
+     * 
+     * @see com.patrikdufresne.managers.IManager#bulkAdd(java.lang.Iterable)
+     */
+    @Override
+    public void bulkAdd(final Iterable<? extends T> s) throws ManagerException {
+        if (s == null) throw new NullPointerException();
+        getManagers().exec(new Exec() {
+            @Override
+            public void run() throws ManagerException {
+                SessionImplementor session = (SessionImplementor) ManagerContext.getDefaultSession();
+                StatelessSession stateless = session.getFactory().openStatelessSession(session.connection());
+                try {
+                    EventTable events = ManagerContext.getDefault().getEventTable();
+                    Date date = new Date();
+                    Iterator<? extends T> iter = s.iterator();
+                    while (iter.hasNext()) {
+                        T t = iter.next();
+                        if (!objectClass().isInstance(t)) throw new ClassCastException();
+                        preAddObject(t);
+                        t.setCreationDate(date);
+                        t.setModificationDate(date);
+                        stateless.insert(t);
+                        events.add(ManagerEvent.ADD, t);
+                        postAddObject(t);
+                    }
+                    // Send the remaining statements of the JDBC batch
+                    ((SessionImplementor) stateless).getTransactionCoordinator().getJdbcCoordinator().executeBatch();
+                } finally {
+                    stateless.close();
+                }
+            }
+        });
+    }
+
     /**
      * Validate the object type. Not intend to be subclass.
      * 
@@ -100,6 +191,77 @@ public abstract class AbstractManager<T extends ManagedObject> implements IManag
         }
     }
 
+    /**
+     * This implementation scroll the records using a forward only cursor within a read-only transaction. The records
+     * are evicted from the session once visited, unless called within an existing transaction.
+     * 
+     * @see com.patrikdufresne.managers.IManager#forEach(com.patrikdufresne.managers.IManagedObjectVisitor)
+     */
+    @Override
+    public void forEach(final IManagedObjectVisitor<? super T> visitor) throws ManagerException {
+        // The objects of an existing transaction must stay in its session
+        final boolean evict = ManagerContext.getDefaultSession() == null;
+        getManagers().queryReadOnly(new Query<Void>() {
+            @Override
+            public Void run() throws ManagerException {
+                scroll(createListCriteria(), visitor, evict);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Scroll the result of the given criteria and call the visitor for each record. Must be called within a
+     * transaction.
+     * 
+     * @param criteria
+     *            the criteria to execute
+     * @param visitor
+     *            the visitor
+     * @param evict
+     *            True to evict each record from the session once visited. Must be false if the session may already
+     *            contain the records, otherwise their modifications are lost.
+     * @throws ManagerException
+     */
+    @SuppressWarnings("unchecked")
+    protected void scroll(Criteria criteria, IManagedObjectVisitor<? super T> visitor, boolean evict) throws ManagerException {
+        Session session = ManagerContext.getDefaultSession();
+        ScrollableResults results = criteria.setFetchSize(getFetchSize()).setReadOnly(true).scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            while (results.next()) {
+                T t = (T) results.get(0);
+                visitor.visit(t);
+                if (evict) {
+                    session.evict(t);
+                }
+            }
+        } finally {
+            results.close();
+        }
+    }
+
+    /**
+     * Return the JDBC fetch size used by {@link #forEach(IManagedObjectVisitor)}.
+     * 
+     * @return the fetch size
+     */
+    public int getFetchSize() {
+        return this.fetchSize;
+    }
+
+    /**
+     * Sets the JDBC fetch size used by {@link #forEach(IManagedObjectVisitor)}.
+     * 
+     * @param fetchSize
+     *            number of rows fetched at once.
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.fetchSize = fetchSize;
+    }
+
     /**
      * This implementation return the object with the given identifier.
      * 
@@ -107,7 +269,7 @@ public abstract class AbstractManager<T extends ManagedObject> implements IManag
      */
     @Override
     public T get(final int id) throws ManagerException {
-        return getManagers().query(new Query<T>() {
+        return getManagers().queryReadOnly(new Query<T>() {
             @SuppressWarnings("unchecked")
             @Override
             public T run() throws ManagerException {
@@ -127,21 +289,86 @@ public abstract class AbstractManager<T extends ManagedObject> implements IManag
     }
 
     /**
-     * This implementation return a complete list of all object managed by this class.
+     * This implementation return a complete list of all object managed by this class. When the list cache is enabled,
+     * the same unmodifiable list is returned until an object of this class is added, updated or removed.
      * 
      * @see com.patrikdufresne.managers.IManager#list()
      */
     @Override
     public List<T> list() throws ManagerException {
-        return getManagers().query(new Query<List<T>>() {
+        Query<List<T>> query = new Query<List<T>>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public List<T> run() throws ManagerException {
+                return (List<T>) createListCriteria().list();
+            }
+        };
+        if (!isListCacheEnabled()) {
+            return getManagers().queryReadOnly(query);
+        }
+        hookCacheObserver();
+        return this.cachedList.get(getManagers(), query);
+    }
+
+    /**
+     * This implementation use keyset pagination on the identifier.
+     * 
+     * @see com.patrikdufresne.managers.IManager#list(java.lang.Integer, int, boolean)
+     */
+    @Override
+    public List<T> list(Integer afterId, int limit, boolean ascending) throws ManagerException {
+        return list(null, null, afterId, limit, ascending);
+    }
+
+    /**
+     * This implementation use keyset pagination on the property and identifier. Unlike an offset, the cost of
+     * retrieving a page doesn't depend on its position.
+     * 
+     * @see com.patrikdufresne.managers.IManager#list(java.lang.String, java.lang.Object, java.lang.Integer, int,
+     *      boolean)
+     */
+    @Override
+    public List<T> list(final String property, final Object afterValue, final Integer afterId, final int limit, final boolean ascending)
+            throws ManagerException {
+        if (limit < 1) {
+            throw new IllegalArgumentException();
+        }
+        if (property == null ? afterValue != null : (afterValue == null) != (afterId == null)) {
+            throw new IllegalArgumentException("afterValue and afterId must be both null or both defined"); //$NON-NLS-1$
+        }
+        return getManagers().queryReadOnly(new Query<List<T>>() {
             @SuppressWarnings("unchecked")
             @Override
             public List<T> run() throws ManagerException {
-                return (List<T>) ManagerContext.getDefaultSession().createCriteria(objectClass()).list();
+                Criteria criteria = createListCriteria();
+                if (afterId != null) {
+                    Criterion afterIdCriterion = ascending ? Restrictions.gt(ID, afterId) : Restrictions.lt(ID, afterId);
+                    if (property == null) {
+                        criteria.add(afterIdCriterion);
+                    } else {
+                        criteria.add(Restrictions.or(ascending ? Restrictions.gt(property, afterValue) : Restrictions.lt(property, afterValue), Restrictions
+                                .and(Restrictions.eq(property, afterValue), afterIdCriterion)));
+                    }
+                }
+                if (property != null) {
+                    criteria.addOrder(ascending ? Order.asc(property) : Order.desc(property));
+                }
+                criteria.addOrder(ascending ? Order.asc(ID) : Order.desc(ID));
+                return criteria.setMaxResults(limit).list();
             }
         });
     }
 
+    /**
+     * Create the criteria used to list the objects. Subclasses may override this function to filter the records
+     * returned by {@link #forEach(IManagedObjectVisitor)} and the paginated list. Must be called within a transaction.
+     * 
+     * @return the criteria
+     */
+    protected Criteria createListCriteria() {
+        return ManagerContext.getDefaultSession().createCriteria(objectClass());
+    }
+
     /**
      * Subclasses may implement this function to execute code after adding the object to database.
      * 
@@ -262,16 +489,143 @@ public abstract class AbstractManager<T extends ManagedObject> implements IManag
     }
 
     /**
-     * This implementation return the number of record in the table.
+     * This implementation return the number of records listed by this manager. When the size cache is enabled, the
+     * count is queried once then maintained using the manager events.
+     * 
+     * @see #setSizeCacheEnabled(boolean)
      */
     @Override
     public int size() throws ManagerException {
-        return getManagers().query(new Query<Integer>() {
+        Query<Number> query = new Query<Number>() {
             @Override
-            public Integer run() throws ManagerException {
-                return (Integer) ManagerContext.getDefaultSession().createCriteria(objectClass()).setProjection(Projections.count("id")).uniqueResult(); //$NON-NLS-1$
+            public Number run() throws ManagerException {
+                return (Number) createListCriteria().setProjection(Projections.rowCount()).uniqueResult();
             }
-        }).intValue();
+        };
+        if (!isSizeCacheEnabled()) {
+            return getManagers().queryReadOnly(query).intValue();
+        }
+        hookCacheObserver();
+        return this.cachedSize.get(getManagers(), query);
+    }
+
+    /**
+     * Add the observer maintaining the cached counts and lists if not already added.
+     */
+    synchronized void hookCacheObserver() {
+        if (this.cacheObserver != null) {
+            return;
+        }
+        this.cacheObserver = new IManagerObserver() {
+            @Override
+            public void handleManagerEvent(ManagerEvent event) {
+                invalidateCachedLists();
+                updateCachedSize(event);
+            }
+        };
+        getManagers().addObserver(ManagerEvent.ALL, objectClass(), this.cacheObserver);
+    }
+
+    /**
+     * Called for every committed event to drop the list snapshots.
+     */
+    void invalidateCachedLists() {
+        this.cachedList.invalidate();
+    }
+
+    /**
+     * Drop the cached counts.
+     */
+    void invalidateCachedSizes() {
+        this.cachedSize.invalidate();
+    }
+
+    /**
+     * Drop the cached counts and lists. The cache only sees the modifications made through this managers, this
+     * function should be called after a bulk HQL or SQL statement or when the database was modified by another
+     * process.
+     */
+    public void invalidateCache() {
+        invalidateCachedLists();
+        invalidateCachedSizes();
+    }
+
+    /**
+     * Return the number of calls to {@link #list()} returning the cached snapshot.
+     * 
+     * @return number of cache hits.
+     */
+    public long getListCacheHitCount() {
+        return this.cachedList.getHitCount();
+    }
+
+    /**
+     * Return the number of calls to {@link #list()} querying the database while the list cache is enabled.
+     * 
+     * @return number of cache misses.
+     */
+    public long getListCacheMissCount() {
+        return this.cachedList.getMissCount();
+    }
+
+    /**
+     * Check if the list cache is enabled.
+     * 
+     * @return True if the list cache is enabled.
+     */
+    public boolean isListCacheEnabled() {
+        return this.listCacheEnabled;
+    }
+
+    /**
+     * Enable or disable the list cache. When enabled, {@link #list()} return a shared unmodifiable snapshot dropped
+     * when an object of this class or a subclass is added, updated or removed.
+     * 
+     * @param enabled
+     *            True to enable the cache.
+     */
+    public void setListCacheEnabled(boolean enabled) {
+        this.listCacheEnabled = enabled;
+        if (!enabled) {
+            invalidateCachedLists();
+        }
+    }
+
+    /**
+     * Check if the size cache is enabled.
+     * 
+     * @return True if the size cache is enabled.
+     */
+    public boolean isSizeCacheEnabled() {
+        return this.sizeCacheEnabled;
+    }
+
+    /**
+     * Enable or disable the size cache. Enabled by default. When disabled, {@link #size()} query the database on every
+     * call. Should be disabled when the database is modified by another process.
+     * 
+     * @param enabled
+     *            True to enable the cache.
+     */
+    public void setSizeCacheEnabled(boolean enabled) {
+        this.sizeCacheEnabled = enabled;
+        if (!enabled) {
+            invalidateCachedSizes();
+        }
+    }
+
+    /**
+     * Called for every committed event to update the cached counts.
+     * 
+     * @param event
+     *            the event
+     */
+    void updateCachedSize(ManagerEvent event) {
+        if (event.type == ManagerEvent.ADD) {
+            this.cachedSize.add(event.objects.size());
+        } else if (event.type == ManagerEvent.REMOVE) {
+            this.cachedSize.add(-event.objects.size());
+        }
     }
 
     /**
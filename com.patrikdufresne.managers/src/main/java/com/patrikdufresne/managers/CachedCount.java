@@ -0,0 +1,83 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.managers;
+
+/**
+ * Number of records maintained by the manager events. The count is loaded from the database when invalid and then
+ * adjusted according to the committed modifications.
+ * 
+ * @author Patrik Dufresne
+ * 
+ */
+final class CachedCount {
+
+    /**
+     * The cached value or -1 if invalid.
+     */
+    private int value = -1;
+
+    /**
+     * Return the count using the cached value if valid or by running the query. Within a transaction, the query is
+     * always run so the uncommitted modifications are counted.
+     * 
+     * @param managers
+     *            the managers used to run the query
+     * @param query
+     *            the query counting the records
+     * @return the number of records
+     * @throws ManagerException
+     */
+    int get(Managers managers, Query<Number> query) throws ManagerException {
+        // Uncommitted modifications are visible within a transaction, the cached value may not be used.
+        if (ManagerContext.getDefaultSession() != null) {
+            return managers.queryReadOnly(query).intValue();
+        }
+        synchronized (this) {
+            if (this.value >= 0) {
+                return this.value;
+            }
+        }
+        long stamp = managers.getModificationStamp();
+        int count = managers.queryReadOnly(query).intValue();
+        synchronized (this) {
+            // Cache the value only if no modifications were committed while counting.
+            if (stamp >= 0 && stamp == managers.getModificationStamp()) {
+                this.value = count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adjust the cached value.
+     * 
+     * @param delta
+     *            the number of records added or removed (negative).
+     */
+    synchronized void add(int delta) {
+        if (this.value >= 0) {
+            this.value = Math.max(0, this.value + delta);
+        }
+    }
+
+    /**
+     * Invalidate the cached value. The next call to get will run the query.
+     */
+    synchronized void invalidate() {
+        this.value = -1;
+    }
+
+}
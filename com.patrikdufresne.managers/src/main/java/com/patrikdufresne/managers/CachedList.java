@@ -0,0 +1,89 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.managers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Snapshot of a list of records. The snapshot is loaded when invalid and dropped by the manager events.
+ * 
+ * @author Patrik Dufresne
+ * 
+ * @param <T>
+ */
+final class CachedList<T> {
+
+    /**
+     * The shared snapshot or null if invalid.
+     */
+    private List<T> snapshot;
+
+    private long hitCount;
+
+    private long missCount;
+
+    /**
+     * Return the snapshot if valid or run the query. Within a transaction, the query is always run so the uncommitted
+     * modifications are listed.
+     * 
+     * @param managers
+     *            the managers used to run the query
+     * @param query
+     *            the query listing the records
+     * @return an unmodifiable list
+     * @throws ManagerException
+     */
+    List<T> get(Managers managers, Query<List<T>> query) throws ManagerException {
+        // Uncommitted modifications are visible within a transaction, the snapshot may not be used.
+        if (ManagerContext.getDefaultSession() != null) {
+            return Collections.unmodifiableList(new ArrayList<T>(managers.queryReadOnly(query)));
+        }
+        synchronized (this) {
+            if (this.snapshot != null) {
+                this.hitCount++;
+                return this.snapshot;
+            }
+            this.missCount++;
+        }
+        long stamp = managers.getModificationStamp();
+        List<T> list = Collections.unmodifiableList(new ArrayList<T>(managers.queryReadOnly(query)));
+        synchronized (this) {
+            // Keep the snapshot only if no modifications were committed while listing.
+            if (stamp >= 0 && stamp == managers.getModificationStamp()) {
+                this.snapshot = list;
+            }
+        }
+        return list;
+    }
+
+    synchronized long getHitCount() {
+        return this.hitCount;
+    }
+
+    synchronized long getMissCount() {
+        return this.missCount;
+    }
+
+    /**
+     * Drop the snapshot.
+     */
+    synchronized void invalidate() {
+        this.snapshot = null;
+    }
+
+}
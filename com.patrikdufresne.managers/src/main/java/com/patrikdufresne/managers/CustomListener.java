@@ -15,8 +15,13 @@
  */
 package com.patrikdufresne.managers;
 
+import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.spi.EventSource;
 import org.hibernate.event.spi.PostDeleteEvent;
 import org.hibernate.event.spi.PostDeleteEventListener;
 import org.hibernate.event.spi.PostInsertEvent;
@@ -25,6 +30,8 @@ import org.hibernate.event.spi.PostLoadEvent;
 import org.hibernate.event.spi.PostLoadEventListener;
 import org.hibernate.event.spi.PostUpdateEvent;
 import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.Type;
 
 /**
  * This listener implement two functionalities.
@@ -53,6 +60,16 @@ public class CustomListener implements PostInsertEventListener, PostUpdateEventL
      */
     private ObjectIdentityTracker tracker;
 
+    /**
+     * Number of properties copied on update.
+     */
+    private final AtomicLong copiedCount = new AtomicLong();
+
+    /**
+     * Number of properties not copied on update.
+     */
+    private final AtomicLong skippedCount = new AtomicLong();
+
     /**
      * Create a new interceptor.
      */
@@ -68,6 +85,30 @@ public class CustomListener implements PostInsertEventListener, PostUpdateEventL
     public void onPostDelete(PostDeleteEvent event) {
         this.tracker.unregister(event.getPersister().getEntityName(), event.getId());
         ManagerContext.getDefault().getEventTable().add(ManagerEvent.REMOVE, event.getEntity());
+        evictAfterCompletion(event.getSession(), event.getPersister(), event.getId());
+    }
+
+    /**
+     * Evict the entity from the second-level cache once the transaction is
+     * completed. So the cached entity is never stale once the event is sent.
+     * 
+     * @param session
+     *            the session
+     * @param persister
+     *            the entity persister
+     * @param id
+     *            the entity id
+     */
+    private static void evictAfterCompletion(EventSource session, final EntityPersister persister, final Serializable id) {
+        if (!persister.hasCache()) {
+            return;
+        }
+        session.getActionQueue().registerProcess(new AfterTransactionCompletionProcess() {
+            @Override
+            public void doAfterTransactionCompletion(boolean success, SessionImplementor session) {
+                persister.getCacheAccessStrategy().evict(session.generateCacheKey(id, persister.getIdentifierType(), persister.getRootEntityName()));
+            }
+        });
     }
 
     /**
@@ -80,22 +121,123 @@ public class CustomListener implements PostInsertEventListener, PostUpdateEventL
         ManagerContext.getDefault().getEventTable().add(ManagerEvent.ADD, event.getEntity());
     }
 
+    /**
+     * This implementation add a new update event with the name of the dirty
+     * properties and update the other instances of the same entity.
+     */
     @Override
     public void onPostUpdate(PostUpdateEvent event) {
-        ManagerContext.getDefault().getEventTable().add(ManagerEvent.UPDATE, event.getEntity());
+        ManagerContext.getDefault().getEventTable().add(ManagerEvent.UPDATE, event.getEntity(), dirtyPropertyNames(event));
+        evictAfterCompletion(event.getSession(), event.getPersister(), event.getId());
 
         // On post update, any instance of this object required to be
         // updated
+        Object entity = event.getEntity();
         for (Object obj : this.tracker.find(event.getPersister().getEntityName(), event.getId())) {
+            if (obj == entity) {
+                continue;
+            }
+            // Notify the listeners once per property
+            ManagedObject managed = obj instanceof ManagedObject ? (ManagedObject) obj : null;
+            if (managed != null) {
+                managed.suspendPropertyChange();
+            }
+            try {
+                copy(event, entity, obj);
+            } finally {
+                if (managed != null) {
+                    managed.resumePropertyChange();
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Copy the dirty properties of the updated entity into another instance of
+     * the same entity. Every properties are copied if the dirty properties are
+     * unknown. The collections and associations are always copied since their
+     * modifications are not reported as dirty properties.
+     * 
+     * @param event
+     *            the update event
+     * @param entity
+     *            the updated entity
+     * @param obj
+     *            the other instance
+     */
+    private void copy(PostUpdateEvent event, Object entity, Object obj) {
+        int[] dirty = event.getDirtyProperties();
+        if (dirty == null) {
             try {
-                ManagedObjectUtils.copyProperties(event.getEntity(), obj);
+                ManagedObjectUtils.copyProperties(entity, obj);
             } catch (IllegalAccessException e) {
                 e.printStackTrace();
             } catch (InvocationTargetException e) {
                 e.printStackTrace();
             }
+            this.copiedCount.addAndGet(event.getPersister().getPropertyNames().length);
+            return;
+        }
+        // Copy only the dirty properties (sorted by Hibernate) and the associations
+        String[] names = event.getPersister().getPropertyNames();
+        Type[] types = event.getPersister().getPropertyTypes();
+        int copied = 0;
+        int next = 0;
+        for (int i = 0; i < names.length; i++) {
+            boolean isDirty = next < dirty.length && dirty[next] == i;
+            if (isDirty) {
+                next++;
+            }
+            if (isDirty || types[i].isAssociationType()) {
+                ManagedObjectUtils.copyProperty(entity, obj, names[i]);
+                copied++;
+            }
         }
+        this.copiedCount.addAndGet(copied);
+        this.skippedCount.addAndGet(names.length - copied);
+    }
+
+    /**
+     * Return the number of property values copied into the other instances
+     * of updated entities, including the full copies of the entities with
+     * unknown dirty properties.
+     * 
+     * @return number of properties copied.
+     */
+    public long getCopiedCount() {
+        return this.copiedCount.get();
+    }
+
+    /**
+     * Return the number of property values not copied into the other
+     * instances of updated entities since the properties were not dirty.
+     * 
+     * @return number of properties skipped.
+     */
+    public long getSkippedCount() {
+        return this.skippedCount.get();
+    }
 
+    /**
+     * Return the names of the dirty properties.
+     * 
+     * @param event
+     *            the update event
+     * @return the names or null if Hibernate didn't dirty check the entity
+     *         (e.g.: a detached object being updated).
+     */
+    private static String[] dirtyPropertyNames(PostUpdateEvent event) {
+        int[] dirty = event.getDirtyProperties();
+        if (dirty == null) {
+            return null;
+        }
+        String[] names = event.getPersister().getPropertyNames();
+        String[] properties = new String[dirty.length];
+        for (int i = 0; i < dirty.length; i++) {
+            properties[i] = names[dirty[i]];
+        }
+        return properties;
     }
 
     /**
@@ -16,35 +16,137 @@
 package com.patrikdufresne.managers;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * This class is used by the managers to register and unregister observers. It's
  * also used to dispatch events to those observers.
+ * <p>
+ * This class is thread safe. The listeners are kept in an immutable table
+ * replaced on every hook or unhook (copy-on-write), so dispatching events never
+ * blocks and never wait for the registration of a listener. A listener
+ * unhooked while an event is being dispatched is not notified anymore.
  */
 public class EventManager {
 
     /**
-     * Growth factor.
+     * A registered listener.
      */
-    private static final int GROW_SIZE = 4;
+    private static final class Entry {
+        /**
+         * The class type.
+         */
+        final Class<?> clazz;
+        /**
+         * The listener.
+         */
+        final IManagerObserver listener;
+        /**
+         * True once the listener is unhooked.
+         */
+        volatile boolean removed;
+        /**
+         * The properties of interest for UPDATE events or null for any
+         * property.
+         */
+        final String[] properties;
+        /**
+         * The event types.
+         */
+        final int type;
+
+        Entry(int type, Class<?> clazz, String[] properties, IManagerObserver listener) {
+            this.type = type;
+            this.clazz = clazz;
+            this.properties = properties;
+            this.listener = listener;
+        }
+
+        /**
+         * Check if the listener should receive the given event.
+         */
+        boolean accept(ManagerEvent event) {
+            if ((this.type & event.type) == 0 || this.removed) {
+                return false;
+            }
+            if (this.properties == null || event.type != ManagerEvent.UPDATE || event.properties == null) {
+                return true;
+            }
+            for (String property : event.properties) {
+                for (String p : this.properties) {
+                    if (p.equals(property)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
 
     /**
-     * List of class type.
+     * An immutable snapshot of the registered listeners.
      */
-    private Class<?>[] clazzs;
+    private static final class Table {
+        /**
+         * The registered listeners.
+         */
+        final Entry[] entries;
+        /**
+         * Dispatch index: for each event class, the listeners hooked to this
+         * class or one of its super class. Resolved lazily.
+         */
+        final ConcurrentMap<Class<?>, Entry[]> dispatch = new ConcurrentHashMap<Class<?>, Entry[]>();
+
+        Table(Entry[] entries) {
+            this.entries = entries;
+        }
+
+        /**
+         * Return the listeners hooked to the given class or one of its super
+         * class.
+         */
+        Entry[] get(Class<?> clazz) {
+            Entry[] matches = this.dispatch.get(clazz);
+            if (matches == null) {
+                List<Entry> list = new ArrayList<Entry>();
+                for (Entry entry : this.entries) {
+                    if (entry.clazz.isAssignableFrom(clazz)) {
+                        list.add(entry);
+                    }
+                }
+                matches = list.toArray(new Entry[list.size()]);
+                this.dispatch.put(clazz, matches);
+            }
+            return matches;
+        }
+    }
+
     /**
-     * Level indicator used to decrease or increase size of this table.
+     * Number of single event types (ADD, REMOVE, UPDATE), used to group the
+     * events by class and type.
      */
-    private int level;
+    private static final int SLOTS = Integer.numberOfTrailingZeros(Integer.highestOneBit(ManagerEvent.ALL)) + 1;
+
     /**
-     * List of listeners.
+     * Initial number of events allocated when grouping an event table.
      */
-    private IManagerObserver[] listeners;
+    private static final int GROUP_SIZE = 8;
+
+    /**
+     * Empty table.
+     */
+    private static final Table EMPTY = new Table(new Entry[0]);
+
     /**
-     * List of types.
+     * The current listener table.
      */
-    private int[] types;
+    private final AtomicReference<Table> table = new AtomicReference<Table>(EMPTY);
 
     /**
      * Private constructor to avoid creating a singleton class.
@@ -64,6 +166,24 @@ public class EventManager {
      *            the listener
      */
     public void hook(int eventType, Class<?> clazz, IManagerObserver listener) {
+        hook(eventType, clazz, null, listener);
+    }
+
+    /**
+     * Add a listener to be notify. The listener receive the UPDATE events only
+     * if one of the given properties is modified or if the modified
+     * properties are unknown.
+     * 
+     * @param eventType
+     *            the vent type
+     * @param clazz
+     *            the class type
+     * @param properties
+     *            the property names or null for any property.
+     * @param listener
+     *            the listener
+     */
+    public void hook(int eventType, Class<?> clazz, String[] properties, IManagerObserver listener) {
         // Check arguments
         if ((eventType & ManagerEvent.ALL) == 0) {
             throw new IllegalArgumentException("eventType"); //$NON-NLS-1$
@@ -71,36 +191,16 @@ public class EventManager {
         if (clazz == null || listener == null) {
             throw new NullPointerException();
         }
-        // Initialize arrays
-        if (this.types == null) this.types = new int[GROW_SIZE];
-        if (this.clazzs == null) this.clazzs = new Class<?>[GROW_SIZE];
-        if (this.listeners == null) this.listeners = new IManagerObserver[GROW_SIZE];
-
-        // Find an empty index
-        int length = this.types.length;
-        int index = length - 1;
-        while (index >= 0) {
-            if (this.types[index] != 0) {
-                break;
-            }
-            --index;
-        }
-        index++;
-        if (index == length) {
-            // Increase arrays size
-            int[] newTypes = new int[length + GROW_SIZE];
-            Class<?>[] newClazzs = new Class<?>[length + GROW_SIZE];
-            IManagerObserver[] newListeners = new IManagerObserver[length + GROW_SIZE];
-            System.arraycopy(this.types, 0, newTypes, 0, length);
-            System.arraycopy(this.clazzs, 0, newClazzs, 0, length);
-            System.arraycopy(this.listeners, 0, newListeners, 0, length);
-            this.types = newTypes;
-            this.clazzs = newClazzs;
-            this.listeners = newListeners;
-        }
-        this.types[index] = eventType;
-        this.clazzs[index] = clazz;
-        this.listeners[index] = listener;
+        Entry entry = new Entry(eventType, clazz, properties != null ? properties.clone() : null, listener);
+        Table current;
+        Entry[] entries;
+        do {
+            current = this.table.get();
+            int length = current.entries.length;
+            entries = new Entry[length + 1];
+            System.arraycopy(current.entries, 0, entries, 0, length);
+            entries[length] = entry;
+        } while (!this.table.compareAndSet(current, new Table(entries)));
     }
 
     /**
@@ -113,37 +213,12 @@ public class EventManager {
      * @return number of listener
      */
     public boolean hooks(int eventType, Class<?> clazz) {
-        // Check arrays
-        if (this.types == null || this.clazzs == null || this.listeners == null) return false;
-        // Check for any occurrence
-        for (int i = 0; i < this.types.length; i++) {
-            if ((this.types[i] & eventType) != 0 && this.clazzs[i] == clazz) return true;
+        for (Entry entry : this.table.get().entries) {
+            if ((entry.type & eventType) != 0 && entry.clazz == clazz) return true;
         }
         return false;
     }
 
-    /**
-     * Remove a listener from this notify table.
-     * 
-     * @param index
-     *            the index of the listener to be remove.
-     */
-    private void remove(int index) {
-        if (this.level == 0) {
-            // Move the data within the arrays
-            int end = this.types.length - 1;
-            System.arraycopy(this.types, index + 1, this.types, index, end - index);
-            System.arraycopy(this.clazzs, index + 1, this.clazzs, index, end - index);
-            System.arraycopy(this.listeners, index + 1, this.listeners, index, end - index);
-            index = end;
-        } else {
-            if (this.level > 0) this.level = -this.level;
-        }
-        this.types[index] = 0;
-        this.clazzs[index] = null;
-        this.listeners[index] = null;
-    }
-
     /**
      * Send the event to the interested listeners.
      * 
@@ -151,41 +226,17 @@ public class EventManager {
      *            the managed event
      */
     public void sendEvent(ManagerEvent event) {
-        // Check the arrays
-        if (this.types == null || this.clazzs == null || this.listeners == null) {
-            return;
-        }
         // Check the event type
         if ((event.type & ManagerEvent.ALL) == 0) {
             return;
         }
-        this.level += this.level >= 0 ? 1 : -1;
-        try {
-            // Send the vent to any listener matching the event type and class
-            // type
-            for (int i = 0; i < this.types.length; i++) {
-                if ((this.types[i] & event.type) != 0 && this.clazzs[i].isAssignableFrom(event.clazz) && this.listeners[i] != null) {
-                    this.listeners[i].handleManagerEvent(event);
-                }
-            }
-        } finally {
-            boolean compact = this.level < 0;
-            this.level -= this.level >= 0 ? 1 : -1;
-            if (compact && this.level == 0) {
-                int index = 0;
-                for (int i = 0; i < this.types.length; i++) {
-                    if (this.types[i] != 0) {
-                        this.types[index] = this.types[i];
-                        this.listeners[index] = this.listeners[i];
-                        this.clazzs[index] = this.clazzs[i];
-                        index++;
-                    }
-                }
-                for (int i = index; i < this.types.length; i++) {
-                    this.types[i] = 0;
-                    this.listeners[i] = null;
-                    this.clazzs[i] = null;
-                }
+        // Send the event to any listener matching the event type and class
+        // type.
+        Entry[] matches = this.table.get().get(event.clazz);
+        for (int i = 0; i < matches.length; i++) {
+            Entry entry = matches[i];
+            if (entry.accept(event)) {
+                entry.listener.handleManagerEvent(event);
             }
         }
     }
@@ -197,27 +248,51 @@ public class EventManager {
      */
     public void sendEvents(EventTable table) {
         /*
-         * Build a list of manager event.
+         * Build a list of manager event, one per class and event type, in the
+         * order of their first entry. The first pass find the event of each
+         * entry and count its objects, the second fill the events.
          */
+        int size = table.size();
         List<ManagerEvent> events = new ArrayList<ManagerEvent>();
-        for (int i = 0; i < table.types.size(); i++) {
-            int eventType = table.types.get(i).intValue();
-            Object entity = table.entities.get(i);
-            Class<?> cls = entity.getClass();
-
-            int index = 0;
-            while (index < events.size() && (!events.get(index).clazz.equals(cls) || events.get(index).type != eventType)) {
-                index++;
+        Map<Class<?>, int[]> groups = new HashMap<Class<?>, int[]>();
+        int[] groupOf = new int[size];
+        int[] counts = new int[GROUP_SIZE];
+        for (int i = 0; i < size; i++) {
+            int eventType = table.getType(i);
+            Class<?> cls = table.getEntity(i).getClass();
+            int[] slots = groups.get(cls);
+            if (slots == null) {
+                slots = new int[SLOTS];
+                Arrays.fill(slots, -1);
+                groups.put(cls, slots);
             }
-            if (index < events.size()) {
-                events.get(index).objects.add(entity);
-            } else {
+            int slot = Integer.numberOfTrailingZeros(eventType);
+            int group = slots[slot];
+            if (group < 0) {
                 ManagerEvent event = new ManagerEvent();
                 event.clazz = cls;
                 event.type = eventType;
-                event.objects = new ArrayList<Object>();
-                event.objects.add(entity);
+                group = slots[slot] = events.size();
                 events.add(event);
+                if (group == counts.length) {
+                    counts = Arrays.copyOf(counts, group * 2);
+                }
+            }
+            counts[group]++;
+            groupOf[i] = group;
+        }
+        boolean[] started = new boolean[events.size()];
+        for (int j = 0; j < events.size(); j++) {
+            events.get(j).objects = new ArrayList<Object>(counts[j]);
+        }
+        for (int i = 0; i < size; i++) {
+            ManagerEvent event = events.get(groupOf[i]);
+            event.objects.add(table.getEntity(i));
+            // The properties of an UPDATE event are the union of the
+            // properties of its objects
+            if (event.type == ManagerEvent.UPDATE) {
+                event.properties = started[groupOf[i]] ? EventTable.union(event.properties, table.getProperties(i)) : table.getProperties(i);
+                started[groupOf[i]] = true;
             }
         }
         /*
@@ -235,13 +310,7 @@ public class EventManager {
      * @return number of listener
      */
     public int size() {
-        // Check if the arrays are initialized
-        if (this.types == null || this.clazzs == null || this.listeners == null) return 0;
-        int count = 0;
-        for (int i = 0; i < this.types.length; i++) {
-            if (this.types[i] != 0) count++;
-        }
-        return count;
+        return this.table.get().entries.length;
     }
 
     /**
@@ -258,12 +327,28 @@ public class EventManager {
         if (clazz == null || listener == null) {
             throw new NullPointerException();
         }
-        if (this.types == null || this.clazzs == null || this.listeners == null) return;
-        for (int i = 0; i < this.types.length; i++) {
-            if (this.types[i] == eventType && this.clazzs[i] == clazz && this.listeners[i] == listener) {
-                remove(i);
+        Table current;
+        Entry[] entries;
+        Entry removed;
+        do {
+            current = this.table.get();
+            int index = 0;
+            int length = current.entries.length;
+            while (index < length) {
+                Entry entry = current.entries[index];
+                if (entry.type == eventType && entry.clazz == clazz && entry.listener == listener) {
+                    break;
+                }
+                index++;
+            }
+            if (index == length) {
                 return;
             }
-        }
+            removed = current.entries[index];
+            entries = new Entry[length - 1];
+            System.arraycopy(current.entries, 0, entries, 0, index);
+            System.arraycopy(current.entries, index + 1, entries, index, length - index - 1);
+        } while (!this.table.compareAndSet(current, entries.length == 0 ? EMPTY : new Table(entries)));
+        removed.removed = true;
     }
 }
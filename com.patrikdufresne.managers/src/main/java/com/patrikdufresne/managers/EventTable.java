@@ -15,25 +15,65 @@
  */
 package com.patrikdufresne.managers;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * This class is used to store a map of object and flags. The flags used to be
  * an INSERT, UPDATE and/or DELETE. This class is typically used by the internal
  * function to store which object need to be include in the event notification.
+ * <p>
+ * The events of the same entity are merged, so an entity is notified only once
+ * per transaction: ADD then UPDATE become ADD, ADD then REMOVE become nothing,
+ * UPDATE then REMOVE become REMOVE and repeated UPDATE become one UPDATE. The
+ * entities are kept in the order of their first event.
  * 
  * @author patapouf
  * 
  */
 public class EventTable implements Cloneable {
 
-    public List<Integer> types;
+    /**
+     * Initial capacity of the arrays.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The event type of each entry. Zero for an entry removed by merging.
+     */
+    private int[] types;
+
+    /**
+     * The entity of each entry.
+     */
+    private Object[] entities;
+
+    /**
+     * The names of the modified properties of each UPDATE entry. Null when
+     * unknown.
+     */
+    private String[][] properties;
+
+    /**
+     * Number of entries used in the arrays, including the removed one.
+     */
+    private int count;
+
+    /**
+     * Number of entries removed by merging.
+     */
+    private int removed;
 
-    public List<Object> entities;
+    /**
+     * Index of the entry of each entity.
+     */
+    private Map<Object, Integer> index;
 
     /**
-     * Add a new entry.
+     * Add a new entry or merge it with the existing entry of the same entity.
      * 
      * @param eventType
      *            the event flag
@@ -41,12 +81,136 @@ public class EventTable implements Cloneable {
      *            the entity
      */
     public void add(int eventType, Object entity) {
-        if (this.types == null || this.entities == null) {
-            this.types = new ArrayList<Integer>();
-            this.entities = new ArrayList<Object>();
+        add(eventType, entity, null);
+    }
+
+    /**
+     * Add a new entry or merge it with the existing entry of the same entity.
+     * 
+     * @param eventType
+     *            the event flag
+     * @param entity
+     *            the entity
+     * @param properties
+     *            the names of the modified properties of an UPDATE event or
+     *            null if unknown.
+     */
+    public void add(int eventType, Object entity, String[] properties) {
+        if (this.types == null) {
+            this.types = new int[INITIAL_CAPACITY];
+            this.entities = new Object[INITIAL_CAPACITY];
+            this.properties = new String[INITIAL_CAPACITY][];
+            this.index = new IdentityHashMap<Object, Integer>();
+        }
+        if (eventType != ManagerEvent.UPDATE) {
+            properties = null;
         }
-        this.types.add(Integer.valueOf(eventType));
-        this.entities.add(entity);
+        Integer i = this.index.get(entity);
+        if (i != null) {
+            int previous = this.types[i.intValue()];
+            int merged = merge(previous, eventType);
+            this.types[i.intValue()] = merged;
+            this.properties[i.intValue()] = previous == ManagerEvent.UPDATE && merged == ManagerEvent.UPDATE
+                    ? union(this.properties[i.intValue()], properties)
+                    : null;
+            if (merged == 0) {
+                this.entities[i.intValue()] = null;
+                this.index.remove(entity);
+                this.removed++;
+            }
+            return;
+        }
+        if (this.count == this.types.length) {
+            grow();
+        }
+        this.types[this.count] = eventType;
+        this.entities[this.count] = entity;
+        this.properties[this.count] = properties;
+        this.index.put(entity, Integer.valueOf(this.count));
+        this.count++;
+    }
+
+    /**
+     * Return the union of the given property names.
+     * 
+     * @return the union or null if one of the arrays is null (unknown).
+     */
+    static String[] union(String[] a, String[] b) {
+        if (a == null || b == null) {
+            return null;
+        }
+        Set<String> set = new LinkedHashSet<String>(Arrays.asList(a));
+        set.addAll(Arrays.asList(b));
+        return set.size() == a.length ? a : set.toArray(new String[set.size()]);
+    }
+
+    /**
+     * Return the event type resulting of two successive events on the same
+     * entity.
+     * 
+     * @param previous
+     *            the recorded event type
+     * @param eventType
+     *            the new event type
+     * @return the merged event type or zero if the entity should not be
+     *         notified.
+     */
+    private static int merge(int previous, int eventType) {
+        switch (previous) {
+        case ManagerEvent.ADD:
+            return eventType == ManagerEvent.REMOVE ? 0 : ManagerEvent.ADD;
+        case ManagerEvent.REMOVE:
+            // The entity is persisted again
+            return eventType == ManagerEvent.ADD ? ManagerEvent.UPDATE : ManagerEvent.REMOVE;
+        default:
+            return eventType;
+        }
+    }
+
+    /**
+     * Increase the arrays size or only remove the merged entries if there is
+     * enough of them.
+     */
+    private void grow() {
+        if (this.removed > this.count / 2) {
+            compact();
+            return;
+        }
+        int capacity = this.types.length * 2;
+        int[] newTypes = new int[capacity];
+        Object[] newEntities = new Object[capacity];
+        String[][] newProperties = new String[capacity][];
+        System.arraycopy(this.types, 0, newTypes, 0, this.count);
+        System.arraycopy(this.entities, 0, newEntities, 0, this.count);
+        System.arraycopy(this.properties, 0, newProperties, 0, this.count);
+        this.types = newTypes;
+        this.entities = newEntities;
+        this.properties = newProperties;
+    }
+
+    /**
+     * Remove the entries removed by merging.
+     */
+    private void compact() {
+        int j = 0;
+        for (int i = 0; i < this.count; i++) {
+            if (this.types[i] != 0) {
+                if (i != j) {
+                    this.types[j] = this.types[i];
+                    this.entities[j] = this.entities[i];
+                    this.properties[j] = this.properties[i];
+                    this.index.put(this.entities[j], Integer.valueOf(j));
+                }
+                j++;
+            }
+        }
+        for (int i = j; i < this.count; i++) {
+            this.types[i] = 0;
+            this.entities[i] = null;
+            this.properties[i] = null;
+        }
+        this.count = j;
+        this.removed = 0;
     }
 
     /**
@@ -54,11 +218,66 @@ public class EventTable implements Cloneable {
      */
     public void clear() {
         if (this.types != null) {
-            this.types.clear();
+            for (int i = 0; i < this.count; i++) {
+                this.entities[i] = null;
+                this.properties[i] = null;
+            }
+            this.index.clear();
         }
-        if (this.entities != null) {
-            this.entities.clear();
+        this.count = 0;
+        this.removed = 0;
+    }
+
+    /**
+     * Return the entity of the given entry.
+     * 
+     * @param i
+     *            the entry index, from zero to {@link #size()} exclusively.
+     * @return the entity
+     */
+    public Object getEntity(int i) {
+        if (this.removed > 0) {
+            compact();
+        }
+        if (i >= this.count) {
+            throw new IndexOutOfBoundsException();
+        }
+        return this.entities[i];
+    }
+
+    /**
+     * Return the names of the modified properties of the given entry.
+     * 
+     * @param i
+     *            the entry index, from zero to {@link #size()} exclusively.
+     * @return the property names or null if unknown or if the entry is not
+     *         an UPDATE.
+     */
+    public String[] getProperties(int i) {
+        if (this.removed > 0) {
+            compact();
         }
+        if (i >= this.count) {
+            throw new IndexOutOfBoundsException();
+        }
+        return this.properties[i];
+    }
+
+    /**
+     * Return the event type of the given entry.
+     * 
+     * @param i
+     *            the entry index, from zero to {@link #size()} exclusively.
+     * @return the event type
+     */
+    public int getType(int i) {
+        if (this.removed > 0) {
+            compact();
+        }
+        if (i >= this.count) {
+            throw new IndexOutOfBoundsException();
+        }
+        return this.types[i];
     }
 
     /**
@@ -67,20 +286,19 @@ public class EventTable implements Cloneable {
      * @return number of event in this table event.
      */
     public int size() {
-        if (this.types == null) {
-            return 0;
-        }
-        return this.types.size();
+        return this.count - this.removed;
     }
 
     @Override
     public EventTable clone() {
         EventTable cloned = new EventTable();
         if (this.types != null) {
-            cloned.types = new ArrayList<Integer>(this.types);
-        }
-        if (this.entities != null) {
-            cloned.entities = new ArrayList<Object>(this.entities);
+            cloned.types = this.types.clone();
+            cloned.entities = this.entities.clone();
+            cloned.properties = this.properties.clone();
+            cloned.index = new IdentityHashMap<Object, Integer>(this.index);
+            cloned.count = this.count;
+            cloned.removed = this.removed;
         }
         return cloned;
     }
@@ -39,6 +39,36 @@ import org.hibernate.dialect.H2Dialect;
 
 public class H2DBConfigurations {
 
+    /**
+     * System property used to override the JDBC batch size. Set to 0 to disable batching.
+     */
+    public static final String BATCH_SIZE = "managers.jdbc.batch_size"; //$NON-NLS-1$
+
+    /**
+     * Default number of statements grouped in a JDBC batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 50;
+
+    /**
+     * Enable or disable the JDBC batching. When enabled, the insert, update and delete statements of the same entity
+     * are grouped and sent to the database in batches of <code>batchSize</code> statements.
+     * 
+     * @param config
+     *            the configuration to update
+     * @param batchSize
+     *            the number of statements per batch or 0 to disable batching.
+     */
+    public static void configureBatching(Configuration config, int batchSize) {
+        if (batchSize < 0) {
+            throw new IllegalArgumentException();
+        }
+        config.setProperty(Environment.STATEMENT_BATCH_SIZE, Integer.toString(batchSize));
+        // Order statements by entity to maximize the batch length
+        config.setProperty(Environment.ORDER_INSERTS, Boolean.toString(batchSize > 0));
+        config.setProperty(Environment.ORDER_UPDATES, Boolean.toString(batchSize > 0));
+        config.setProperty(Environment.BATCH_VERSIONED_DATA, Boolean.toString(batchSize > 0));
+    }
+
     /**
      * Used to copy a file.
      * 
@@ -126,8 +156,11 @@ public class H2DBConfigurations {
         // Set default shema
         config.setProperty(Environment.DEFAULT_SCHEMA, "PUBLIC");//$NON-NLS-1$
 
-        // Set a driver managed connection pool (to avoid using connection pool)
-        config.setProperty(Environment.CONNECTION_PROVIDER, "org.hibernate.connection.DriverManagerConnectionProvider");
+        // Use the bundled connection pool
+        config.setProperty(Environment.CONNECTION_PROVIDER, PooledConnectionProvider.class.getCanonicalName());
+
+        // Group statements into JDBC batches
+        configureBatching(config, Integer.getInteger(BATCH_SIZE, DEFAULT_BATCH_SIZE).intValue());
 
         // Enable Hibernate's automatic session context management
         config.setProperty(Environment.CURRENT_SESSION_CONTEXT_CLASS, ThreadLocalSessionContext.class.getCanonicalName());//$NON-NLS-1$ 
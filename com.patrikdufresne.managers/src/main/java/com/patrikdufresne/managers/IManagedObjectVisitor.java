@@ -0,0 +1,40 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.managers;
+
+/**
+ * This interface is used to process the objects one by one while they are read from the database. See
+ * {@link IManager#forEach(IManagedObjectVisitor)}.
+ * 
+ * @author Patrik Dufresne
+ * 
+ * @param <T>
+ */
+public interface IManagedObjectVisitor<T extends ManagedObject> {
+
+    /**
+     * Called for each object. The object is removed from the session once this function returns. When the iteration
+     * runs within an existing transaction, the object is kept in the session of that transaction: it may be an
+     * instance already loaded by that transaction and the session grows with each object visited.
+     * 
+     * @param t
+     *            the object
+     * @throws ManagerException
+     *             to stop the iteration and rollback the transaction.
+     */
+    public void visit(T t) throws ManagerException;
+
+}
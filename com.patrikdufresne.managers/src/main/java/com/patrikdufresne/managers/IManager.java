@@ -37,6 +37,18 @@ public interface IManager<T extends ManagedObject> {
      */
     public void add(Collection<? extends T> t) throws ManagerException;
 
+    /**
+     * Add a large number of objects without keeping them in the persistence context. The objects are inserted as they
+     * are returned by the iterable and a single {@link ManagerEvent#ADD} event is sent per class once the
+     * transaction is committed.
+     * <p>
+     * Collections mapped by the objects are not persisted.
+     * 
+     * @param t
+     *            the objects to be added
+     */
+    public void bulkAdd(Iterable<? extends T> t) throws ManagerException;
+
     /**
      * Add an observer to this manager that will be notify when object are added
      * updated or removed.
@@ -59,6 +71,16 @@ public interface IManager<T extends ManagedObject> {
      */
     public void addObserver(int eventType, IManagerObserver observer);
 
+    /**
+     * Read all records one by one without loading the complete list in memory. The records are read within a
+     * read-only transaction, the visitor must not modify the database. When called within an existing transaction, the
+     * records are read within that transaction and kept in its session.
+     * 
+     * @param visitor
+     *            the visitor called for each record
+     */
+    public void forEach(IManagedObjectVisitor<? super T> visitor) throws ManagerException;
+
     public T get(int id) throws ManagerException;
 
     /**
@@ -75,6 +97,41 @@ public interface IManager<T extends ManagedObject> {
      */
     public List<T> list() throws ManagerException;
 
+    /**
+     * List a page of records ordered by identifier. The next page is retrieved by passing the identifier of the last
+     * record of the previous page.
+     * 
+     * @param afterId
+     *            the identifier of the last record of the previous page or null to get the first page.
+     * @param limit
+     *            the maximum number of records to return.
+     * @param ascending
+     *            true to sort the records in ascending order.
+     * @return list of records
+     */
+    public List<T> list(Integer afterId, int limit, boolean ascending) throws ManagerException;
+
+    /**
+     * List a page of records ordered by the given property then by identifier. The next page is retrieved by passing
+     * the property value and identifier of the last record of the previous page. The property should be indexed and
+     * not nullable.
+     * 
+     * @param property
+     *            the property used to sort the records.
+     * @param afterValue
+     *            the property value of the last record of the previous page or null to get the first page.
+     * @param afterId
+     *            the identifier of the last record of the previous page or null to get the first page.
+     * @param limit
+     *            the maximum number of records to return.
+     * @param ascending
+     *            true to sort the records in ascending order.
+     * @return list of records
+     * @throws IllegalArgumentException
+     *             if only one of <code>afterValue</code> and <code>afterId</code> is null.
+     */
+    public List<T> list(String property, Object afterValue, Integer afterId, int limit, boolean ascending) throws ManagerException;
+
     /**
      * Return the object class manage by class implementing this interface.
      * 
@@ -109,6 +166,10 @@ public interface IManager<T extends ManagedObject> {
 
     /**
      * Return the number of records.
+     * <p>
+     * Implementations may cache the count and maintain it using the events of this managers. Such count doesn't see
+     * the modifications made by another process sharing the database (e.g.: AUTO_SERVER mode) nor the bulk HQL or SQL
+     * statements. See {@link AbstractManager#invalidateCache()} and {@link AbstractManager#setSizeCacheEnabled(boolean)}.
      * 
      * @return the size
      */
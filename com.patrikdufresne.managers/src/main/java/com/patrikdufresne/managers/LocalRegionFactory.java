@@ -0,0 +1,634 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.managers;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.spi.CacheDataDescription;
+import org.hibernate.cache.spi.CollectionRegion;
+import org.hibernate.cache.spi.EntityRegion;
+import org.hibernate.cache.spi.NaturalIdRegion;
+import org.hibernate.cache.spi.QueryResultsRegion;
+import org.hibernate.cache.spi.Region;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cache.spi.TimestampsRegion;
+import org.hibernate.cache.spi.TransactionalDataRegion;
+import org.hibernate.cache.spi.access.AccessType;
+import org.hibernate.cache.spi.access.CollectionRegionAccessStrategy;
+import org.hibernate.cache.spi.access.EntityRegionAccessStrategy;
+import org.hibernate.cache.spi.access.RegionAccessStrategy;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.cfg.Environment;
+import org.hibernate.cfg.Settings;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+
+/**
+ * Hibernate second-level cache keeping the entities in the JVM memory. Each region is bounded to a maximum number of
+ * entries and the least recently used entries are evicted first.
+ * <p>
+ * The maximum number of entries is defined for all the regions using <code>managers.cache.max_entries</code> and may
+ * be overridden for a specific region using <code>managers.cache.max_entries.&lt;region&gt;</code>. The entity region
+ * name is the entity class name. Use {@link #enable(Configuration)} and {@link #cache(Configuration, Class, int)} to
+ * configure the cache.
+ * <p>
+ * Entries being updated or removed are locked until the transaction completes to avoid a concurrent transaction
+ * caching a stale state. Only the read-write, nonstrict-read-write and read-only strategies are supported.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+public class LocalRegionFactory implements RegionFactory {
+
+    /**
+     * Property used to define the maximum number of entries per region.
+     */
+    public static final String MAX_ENTRIES = "managers.cache.max_entries"; //$NON-NLS-1$
+
+    /**
+     * Default maximum number of entries per region.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    /**
+     * Number of timestamp per milliseconds.
+     */
+    private static final int TIMESTAMP_PER_MS = 4096;
+
+    /**
+     * Lock timeout (60 seconds).
+     */
+    private static final int TIMEOUT = 60000 * TIMESTAMP_PER_MS;
+
+    /**
+     * Enable the second-level cache using this region factory.
+     *
+     * @param config
+     *            the configuration to update
+     */
+    public static void enable(Configuration config) {
+        config.setProperty(Environment.USE_SECOND_LEVEL_CACHE, "true"); //$NON-NLS-1$
+        config.setProperty(Environment.CACHE_REGION_FACTORY, LocalRegionFactory.class.getCanonicalName());
+    }
+
+    /**
+     * Enable the second-level cache for the given entity class.
+     *
+     * @param config
+     *            the configuration to update
+     * @param clazz
+     *            the entity class
+     * @param maxEntries
+     *            the maximum number of entities to keep in memory.
+     */
+    public static void cache(Configuration config, Class<? extends ManagedObject> clazz, int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException();
+        }
+        config.setCacheConcurrencyStrategy(clazz.getName(), AccessType.READ_WRITE.getExternalName());
+        config.setProperty(MAX_ENTRIES + "." + clazz.getName(), Integer.toString(maxEntries)); //$NON-NLS-1$
+    }
+
+    /**
+     * The configuration properties.
+     */
+    private Properties properties;
+
+    /**
+     * The regions by name.
+     */
+    private final Map<String, LocalRegion> regions = new HashMap<String, LocalRegion>();
+
+    /**
+     * The last timestamp returned.
+     */
+    private long lastTimestamp;
+
+    @Override
+    public void start(Settings settings, Properties properties) throws CacheException {
+        this.properties = properties;
+    }
+
+    @Override
+    public void stop() {
+        synchronized (this.regions) {
+            for (LocalRegion region : this.regions.values()) {
+                region.destroy();
+            }
+            this.regions.clear();
+        }
+    }
+
+    @Override
+    public boolean isMinimalPutsEnabledByDefault() {
+        return false;
+    }
+
+    @Override
+    public AccessType getDefaultAccessType() {
+        return AccessType.READ_WRITE;
+    }
+
+    @Override
+    public synchronized long nextTimestamp() {
+        long timestamp = System.currentTimeMillis() * TIMESTAMP_PER_MS;
+        this.lastTimestamp = Math.max(timestamp, this.lastTimestamp + 1);
+        return this.lastTimestamp;
+    }
+
+    /**
+     * Return the region with the given name. Used to retrieve the statistics.
+     *
+     * @param regionName
+     *            the region name (the entity class name for entities).
+     * @return the region or null if not found.
+     */
+    public LocalRegion getRegion(String regionName) {
+        synchronized (this.regions) {
+            return this.regions.get(regionName);
+        }
+    }
+
+    /**
+     * Register a new region.
+     */
+    private <T extends LocalRegion> T register(T region) {
+        synchronized (this.regions) {
+            this.regions.put(region.getName(), region);
+        }
+        return region;
+    }
+
+    /**
+     * Return the maximum number of entries of the given region.
+     */
+    private int getMaxEntries(String regionName) {
+        int defaultValue = ConfigurationHelper.getInt(MAX_ENTRIES, this.properties, DEFAULT_MAX_ENTRIES);
+        return ConfigurationHelper.getInt(MAX_ENTRIES + "." + regionName, this.properties, defaultValue); //$NON-NLS-1$
+    }
+
+    @Override
+    public EntityRegion buildEntityRegion(String regionName, Properties properties, CacheDataDescription metadata) throws CacheException {
+        return register(new LocalEntityRegion(this, regionName, getMaxEntries(regionName), metadata));
+    }
+
+    @Override
+    public NaturalIdRegion buildNaturalIdRegion(String regionName, Properties properties, CacheDataDescription metadata) throws CacheException {
+        throw new CacheException("natural id cache not supported"); //$NON-NLS-1$
+    }
+
+    @Override
+    public CollectionRegion buildCollectionRegion(String regionName, Properties properties, CacheDataDescription metadata) throws CacheException {
+        return register(new LocalCollectionRegion(this, regionName, getMaxEntries(regionName), metadata));
+    }
+
+    @Override
+    public QueryResultsRegion buildQueryResultsRegion(String regionName, Properties properties) throws CacheException {
+        return register(new LocalGeneralDataRegion(this, regionName, getMaxEntries(regionName)));
+    }
+
+    @Override
+    public TimestampsRegion buildTimestampsRegion(String regionName, Properties properties) throws CacheException {
+        return register(new LocalGeneralDataRegion(this, regionName, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Marker stored in place of an entry being modified by a transaction.
+     */
+    private static class Lock implements SoftLock {
+
+        /**
+         * Number of transactions holding the lock.
+         */
+        int count;
+
+        /**
+         * Timestamp of the last unlock.
+         */
+        long releaseTimestamp;
+
+    }
+
+    /**
+     * A region holding the entries in a LRU map.
+     */
+    public static class LocalRegion implements Region {
+
+        private final LocalRegionFactory factory;
+
+        private final String name;
+
+        private final Map<Object, Object> map;
+
+        private long hitCount;
+
+        private long missCount;
+
+        LocalRegion(LocalRegionFactory factory, String name, final int maxEntries) {
+            this.factory = factory;
+            this.name = name;
+            this.map = new LinkedHashMap<Object, Object>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Entry<Object, Object> eldest) {
+                    // Locked entries are kept until released.
+                    return size() > maxEntries && !(eldest.getValue() instanceof Lock && ((Lock) eldest.getValue()).count > 0);
+                }
+            };
+        }
+
+        @Override
+        public boolean contains(Object key) {
+            return getValue(key) != null;
+        }
+
+        @Override
+        public synchronized void destroy() throws CacheException {
+            this.map.clear();
+        }
+
+        @Override
+        public synchronized long getElementCountInMemory() {
+            return this.map.size();
+        }
+
+        @Override
+        public long getElementCountOnDisk() {
+            return 0;
+        }
+
+        /**
+         * Return the number of lookup returning a value.
+         *
+         * @return number of cache hits.
+         */
+        public synchronized long getHitCount() {
+            return this.hitCount;
+        }
+
+        /**
+         * Return the number of lookup not returning a value.
+         *
+         * @return number of cache misses.
+         */
+        public synchronized long getMissCount() {
+            return this.missCount;
+        }
+
+        @Override
+        public String getName() {
+            return this.name;
+        }
+
+        @Override
+        public long getSizeInMemory() {
+            return -1;
+        }
+
+        @Override
+        public int getTimeout() {
+            return TIMEOUT;
+        }
+
+        @Override
+        public long nextTimestamp() {
+            return this.factory.nextTimestamp();
+        }
+
+        @Override
+        public synchronized Map toMap() {
+            Map<Object, Object> copy = new HashMap<Object, Object>();
+            for (Entry<Object, Object> e : this.map.entrySet()) {
+                if (!(e.getValue() instanceof Lock)) {
+                    copy.put(e.getKey(), e.getValue());
+                }
+            }
+            return copy;
+        }
+
+        /**
+         * Return the value if not locked.
+         */
+        synchronized Object getValue(Object key) {
+            Object value = this.map.get(key);
+            if (value == null || value instanceof Lock) {
+                this.missCount++;
+                return null;
+            }
+            this.hitCount++;
+            return value;
+        }
+
+        /**
+         * Put the value unless the entry is locked or was released after the given timestamp.
+         */
+        synchronized boolean putValue(Object key, Object value, long txTimestamp, boolean minimalPut) {
+            Object current = this.map.get(key);
+            if (current instanceof Lock) {
+                Lock lock = (Lock) current;
+                if (lock.count > 0 || txTimestamp <= lock.releaseTimestamp) {
+                    return false;
+                }
+            } else if (minimalPut && current != null) {
+                return false;
+            }
+            this.map.put(key, value);
+            return true;
+        }
+
+        /**
+         * Put the value only if the key is not cached.
+         */
+        synchronized boolean putIfAbsent(Object key, Object value) {
+            if (this.map.containsKey(key)) {
+                return false;
+            }
+            this.map.put(key, value);
+            return true;
+        }
+
+        synchronized SoftLock lock(Object key) {
+            Object current = this.map.get(key);
+            Lock lock;
+            if (current instanceof Lock) {
+                lock = (Lock) current;
+            } else {
+                lock = new Lock();
+                this.map.put(key, lock);
+            }
+            lock.count++;
+            return lock;
+        }
+
+        synchronized void unlock(Object key) {
+            Object current = this.map.get(key);
+            Lock lock;
+            if (current instanceof Lock) {
+                lock = (Lock) current;
+                lock.count = Math.max(0, lock.count - 1);
+            } else {
+                lock = new Lock();
+                this.map.put(key, lock);
+            }
+            lock.releaseTimestamp = this.factory.nextTimestamp();
+        }
+
+        /**
+         * Remove the value unless locked.
+         */
+        synchronized void removeValue(Object key) {
+            if (!(this.map.get(key) instanceof Lock)) {
+                this.map.remove(key);
+            }
+        }
+
+        /**
+         * Remove all the values, keep the locks.
+         */
+        synchronized void removeValues() {
+            Iterator<Object> iter = this.map.values().iterator();
+            while (iter.hasNext()) {
+                if (!(iter.next() instanceof Lock)) {
+                    iter.remove();
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Region used for query results and timestamps.
+     */
+    static class LocalGeneralDataRegion extends LocalRegion implements QueryResultsRegion, TimestampsRegion {
+
+        LocalGeneralDataRegion(LocalRegionFactory factory, String name, int maxEntries) {
+            super(factory, name, maxEntries);
+        }
+
+        @Override
+        public Object get(Object key) throws CacheException {
+            return getValue(key);
+        }
+
+        @Override
+        public void put(Object key, Object value) throws CacheException {
+            putValue(key, value, Long.MAX_VALUE, false);
+        }
+
+        @Override
+        public void evict(Object key) throws CacheException {
+            removeValue(key);
+        }
+
+        @Override
+        public void evictAll() throws CacheException {
+            removeValues();
+        }
+
+    }
+
+    /**
+     * Base class of entity and collection regions.
+     */
+    abstract static class LocalTransactionalRegion extends LocalRegion implements TransactionalDataRegion {
+
+        private final CacheDataDescription metadata;
+
+        LocalTransactionalRegion(LocalRegionFactory factory, String name, int maxEntries, CacheDataDescription metadata) {
+            super(factory, name, maxEntries);
+            this.metadata = metadata;
+        }
+
+        @Override
+        public CacheDataDescription getCacheDataDescription() {
+            return this.metadata;
+        }
+
+        @Override
+        public boolean isTransactionAware() {
+            return false;
+        }
+
+        /**
+         * Check if the access type is supported.
+         */
+        static void checkAccessType(AccessType accessType) {
+            if (AccessType.TRANSACTIONAL.equals(accessType)) {
+                throw new CacheException("transactional access not supported"); //$NON-NLS-1$
+            }
+        }
+
+    }
+
+    static class LocalEntityRegion extends LocalTransactionalRegion implements EntityRegion {
+
+        LocalEntityRegion(LocalRegionFactory factory, String name, int maxEntries, CacheDataDescription metadata) {
+            super(factory, name, maxEntries, metadata);
+        }
+
+        @Override
+        public EntityRegionAccessStrategy buildAccessStrategy(AccessType accessType) throws CacheException {
+            checkAccessType(accessType);
+            return new EntityAccessStrategy(this);
+        }
+
+    }
+
+    static class LocalCollectionRegion extends LocalTransactionalRegion implements CollectionRegion {
+
+        LocalCollectionRegion(LocalRegionFactory factory, String name, int maxEntries, CacheDataDescription metadata) {
+            super(factory, name, maxEntries, metadata);
+        }
+
+        @Override
+        public CollectionRegionAccessStrategy buildAccessStrategy(AccessType accessType) throws CacheException {
+            checkAccessType(accessType);
+            return new CollectionAccessStrategy(this);
+        }
+
+    }
+
+    /**
+     * Access strategy locking the entries being modified.
+     */
+    abstract static class LocalAccessStrategy implements RegionAccessStrategy {
+
+        final LocalRegion region;
+
+        LocalAccessStrategy(LocalRegion region) {
+            this.region = region;
+        }
+
+        @Override
+        public Object get(Object key, long txTimestamp) throws CacheException {
+            return this.region.getValue(key);
+        }
+
+        @Override
+        public boolean putFromLoad(Object key, Object value, long txTimestamp, Object version) throws CacheException {
+            return putFromLoad(key, value, txTimestamp, version, false);
+        }
+
+        @Override
+        public boolean putFromLoad(Object key, Object value, long txTimestamp, Object version, boolean minimalPutOverride) throws CacheException {
+            return this.region.putValue(key, value, txTimestamp, minimalPutOverride);
+        }
+
+        @Override
+        public SoftLock lockItem(Object key, Object version) throws CacheException {
+            return this.region.lock(key);
+        }
+
+        @Override
+        public SoftLock lockRegion() throws CacheException {
+            this.region.removeValues();
+            return null;
+        }
+
+        @Override
+        public void unlockItem(Object key, SoftLock lock) throws CacheException {
+            this.region.unlock(key);
+        }
+
+        @Override
+        public void unlockRegion(SoftLock lock) throws CacheException {
+            this.region.removeValues();
+        }
+
+        @Override
+        public void remove(Object key) throws CacheException {
+            this.region.removeValue(key);
+        }
+
+        @Override
+        public void removeAll() throws CacheException {
+            this.region.removeValues();
+        }
+
+        @Override
+        public void evict(Object key) throws CacheException {
+            this.region.removeValue(key);
+        }
+
+        @Override
+        public void evictAll() throws CacheException {
+            this.region.removeValues();
+        }
+
+    }
+
+    static class EntityAccessStrategy extends LocalAccessStrategy implements EntityRegionAccessStrategy {
+
+        EntityAccessStrategy(LocalEntityRegion region) {
+            super(region);
+        }
+
+        @Override
+        public EntityRegion getRegion() {
+            return (EntityRegion) this.region;
+        }
+
+        /**
+         * This implementation doesn't cache the entity until the transaction is committed.
+         */
+        @Override
+        public boolean insert(Object key, Object value, Object version) throws CacheException {
+            return false;
+        }
+
+        @Override
+        public boolean afterInsert(Object key, Object value, Object version) throws CacheException {
+            return this.region.putIfAbsent(key, value);
+        }
+
+        /**
+         * This implementation doesn't cache the entity, the entry is locked until the transaction complete.
+         */
+        @Override
+        public boolean update(Object key, Object value, Object currentVersion, Object previousVersion) throws CacheException {
+            return false;
+        }
+
+        @Override
+        public boolean afterUpdate(Object key, Object value, Object currentVersion, Object previousVersion, SoftLock lock) throws CacheException {
+            this.region.unlock(key);
+            return false;
+        }
+
+    }
+
+    static class CollectionAccessStrategy extends LocalAccessStrategy implements CollectionRegionAccessStrategy {
+
+        CollectionAccessStrategy(LocalCollectionRegion region) {
+            super(region);
+        }
+
+        @Override
+        public CollectionRegion getRegion() {
+            return (CollectionRegion) this.region;
+        }
+
+    }
+
+}
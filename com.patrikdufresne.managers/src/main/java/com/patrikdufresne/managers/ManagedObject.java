@@ -16,17 +16,17 @@
 package com.patrikdufresne.managers;
 
 import java.beans.PropertyChangeListener;
-import java.beans.PropertyChangeSupport;
 import java.util.Date;
 
 import javax.persistence.Column;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.MappedSuperclass;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 
+import org.hibernate.annotations.GenericGenerator;
+
 /**
  * This class is a based to other database object.
  */
@@ -38,7 +38,13 @@ public class ManagedObject implements java.io.Serializable {
      */
     private static final long serialVersionUID = 2752896880322357422L;
 
-    protected PropertyChangeSupport changeSupport = new PropertyChangeSupport(this);
+    /**
+     * The change support, created when the first listener is added since most
+     * of the loaded objects never get a listener. Volatile since the
+     * listeners may be added and the events fired from different threads
+     * (e.g.: while the manager copies the updated values). Not serialized.
+     */
+    private transient volatile ManagedObjectChangeSupport changeSupport;
 
     /**
      * Define the creation date of this object.
@@ -48,7 +54,7 @@ public class ManagedObject implements java.io.Serializable {
     private Date creationDate;
 
     /**
-     * Unique identifier auto generated by hibernate.
+     * Unique identifier generated by {@link PooledIdentifierGenerator}.
      * 
      * @uml.property name="id"
      */
@@ -63,7 +69,7 @@ public class ManagedObject implements java.io.Serializable {
      *            The PropertyChangeListener to be added
      */
     public void addPropertyChangeListener(PropertyChangeListener listener) {
-        this.changeSupport.addPropertyChangeListener(listener);
+        changeSupport().addPropertyChangeListener(listener);
     }
 
     /**
@@ -75,7 +81,7 @@ public class ManagedObject implements java.io.Serializable {
      *            The PropertyChangeListener to be added
      */
     public void addPropertyChangeListener(String propertyName, PropertyChangeListener listener) {
-        this.changeSupport.addPropertyChangeListener(propertyName, listener);
+        changeSupport().addPropertyChangeListener(propertyName, listener);
     }
 
     @Override
@@ -90,6 +96,99 @@ public class ManagedObject implements java.io.Serializable {
         return true;
     }
 
+    /**
+     * Reports a bound property update to the listeners. Does nothing if no
+     * listeners was added.
+     * 
+     * @param propertyName
+     *            the programmatic name of the property that was changed
+     * @param oldValue
+     *            the old value of the property
+     * @param newValue
+     *            the new value of the property
+     */
+    protected void firePropertyChange(String propertyName, Object oldValue, Object newValue) {
+        ManagedObjectChangeSupport support = this.changeSupport;
+        if (support != null) {
+            support.firePropertyChange(propertyName, oldValue, newValue);
+        }
+    }
+
+    /**
+     * Reports a boolean bound property update to the listeners. Does nothing
+     * if no listeners was added.
+     * 
+     * @param propertyName
+     *            the programmatic name of the property that was changed
+     * @param oldValue
+     *            the old value of the property
+     * @param newValue
+     *            the new value of the property
+     */
+    protected void firePropertyChange(String propertyName, boolean oldValue, boolean newValue) {
+        ManagedObjectChangeSupport support = this.changeSupport;
+        if (support != null) {
+            support.firePropertyChange(propertyName, oldValue, newValue);
+        }
+    }
+
+    /**
+     * Reports an integer bound property update to the listeners. Does nothing
+     * if no listeners was added.
+     * 
+     * @param propertyName
+     *            the programmatic name of the property that was changed
+     * @param oldValue
+     *            the old value of the property
+     * @param newValue
+     *            the new value of the property
+     */
+    protected void firePropertyChange(String propertyName, int oldValue, int newValue) {
+        ManagedObjectChangeSupport support = this.changeSupport;
+        if (support != null) {
+            support.firePropertyChange(propertyName, oldValue, newValue);
+        }
+    }
+
+    /**
+     * Return the change support, create it if required.
+     */
+    private ManagedObjectChangeSupport changeSupport() {
+        ManagedObjectChangeSupport support = this.changeSupport;
+        if (support == null) {
+            synchronized (this) {
+                support = this.changeSupport;
+                if (support == null) {
+                    this.changeSupport = support = new ManagedObjectChangeSupport(this);
+                }
+            }
+        }
+        return support;
+    }
+
+    /**
+     * Delay the property change events until {@link #resumePropertyChange()}
+     * is called. The delayed events are coalesced per property. Does nothing if
+     * no listeners was added.
+     */
+    void suspendPropertyChange() {
+        ManagedObjectChangeSupport support = this.changeSupport;
+        if (support != null) {
+            support.suspend();
+        }
+    }
+
+    /**
+     * Fire the property change events delayed by
+     * {@link #suspendPropertyChange()}.
+     */
+    void resumePropertyChange() {
+        ManagedObjectChangeSupport support = this.changeSupport;
+        if (support != null) {
+            support.resume();
+        }
+    }
+
     /**
      * Getter of the property <tt>creationDate</tt>
      * 
@@ -109,7 +208,8 @@ public class ManagedObject implements java.io.Serializable {
      * @uml.property name="id"
      */
     @Id()
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(generator = "managers_id")
+    @GenericGenerator(name = "managers_id", strategy = "com.patrikdufresne.managers.PooledIdentifierGenerator")
     public Integer getId() {
         return this.id;
     }
@@ -138,7 +238,8 @@ public class ManagedObject implements java.io.Serializable {
      * @return
      */
     public boolean hasListeners(String propertyName) {
-        return this.changeSupport.hasListeners(propertyName);
+        ManagedObjectChangeSupport support = this.changeSupport;
+        return support != null && support.hasListeners(propertyName);
     }
 
     /**
@@ -148,7 +249,10 @@ public class ManagedObject implements java.io.Serializable {
      *            The PropertyChangeListener to be removed
      */
     public void removePropertyChangeListener(PropertyChangeListener listener) {
-        this.changeSupport.removePropertyChangeListener(listener);
+        ManagedObjectChangeSupport support = this.changeSupport;
+        if (support != null) {
+            support.removePropertyChangeListener(listener);
+        }
     }
 
     /**
@@ -160,7 +264,10 @@ public class ManagedObject implements java.io.Serializable {
      *            The PropertyChangeListener to be removed
      */
     public void removePropertyChangeListener(String propertyName, PropertyChangeListener listener) {
-        this.changeSupport.removePropertyChangeListener(propertyName, listener);
+        ManagedObjectChangeSupport support = this.changeSupport;
+        if (support != null) {
+            support.removePropertyChangeListener(propertyName, listener);
+        }
     }
 
     /**
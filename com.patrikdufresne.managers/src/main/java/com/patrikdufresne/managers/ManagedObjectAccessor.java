@@ -0,0 +1,80 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.managers;
+
+/**
+ * Reflection-free accessors of the bean properties of a managed object class. Implementations are generated at
+ * compile time by the <code>com.patrikdufresne.managers.processor</code> annotation processor for each
+ * <code>@Entity</code> class and are named after the entity class with the {@link #SUFFIX} suffix (e.g.:
+ * <code>MyEntity_Accessor</code>).
+ * <p>
+ * When found, the generated accessor is used by {@link ManagedObjectUtils} and {@link CustomListener} instead of the
+ * Introspector. Only the properties having both a public getter and setter, not annotated with
+ * <code>@Transient</code>, are handled.
+ * 
+ * @author Patrik Dufresne
+ * 
+ */
+public interface ManagedObjectAccessor {
+
+    /**
+     * Suffix added to the entity class name to name the generated accessor.
+     */
+    public static final String SUFFIX = "_Accessor"; //$NON-NLS-1$
+
+    /**
+     * Copy every property value of <code>orig</code> into <code>dest</code>. A property is written only when its
+     * value is not the same.
+     * 
+     * @param orig
+     *            the origin bean
+     * @param dest
+     *            the destination bean
+     */
+    public void copy(Object orig, Object dest);
+
+    /**
+     * Return the names of the properties handled by this accessor, sorted by name. The index of a name is used to
+     * read or write the property.
+     * 
+     * @return the property names
+     */
+    public String[] getPropertyNames();
+
+    /**
+     * Return the value of a property.
+     * 
+     * @param bean
+     *            the bean
+     * @param index
+     *            the property index
+     * @return the property value
+     */
+    public Object read(Object bean, int index);
+
+    /**
+     * Sets the value of a property.
+     * 
+     * @param bean
+     *            the bean
+     * @param index
+     *            the property index
+     * @param value
+     *            the new value
+     */
+    public void write(Object bean, int index, Object value);
+
+}
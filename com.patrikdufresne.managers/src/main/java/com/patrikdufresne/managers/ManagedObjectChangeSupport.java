@@ -19,8 +19,9 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeListenerProxy;
 import java.io.Serializable;
-import java.util.Arrays;
 import java.util.EventListener;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * This is a utility class that can be used by beans that support bound
@@ -61,7 +62,12 @@ import java.util.EventListener;
  * }
  * </pre>
  * <p>
- * A {@code PropertyChangeSupport} instance is thread-safe.
+ * The listeners are indexed by property name. Firing an event for a property
+ * without listeners doesn't allocate anything.
+ * <p>
+ * This class is thread-safe. Listeners are added and removed under a lock by
+ * replacing the arrays and the map holding them, so the events are sent
+ * without locking to the listeners registered when the event is fired.
  * <p>
  * This class is serializable. When it is serialized it will save (and restore)
  * any listeners that are themselves serializable. Any non-serializable
@@ -75,52 +81,72 @@ public class ManagedObjectChangeSupport implements Serializable {
      */
     private static final long serialVersionUID = 3469976102973763335L;
 
-    private static final String ALL_PROPERTIES = "ManagedObjectChangeSupport.allProperties"; //$NON-NLS-1$
-
     /**
-     * Growth factor.
+     * Initial capacity of the delayed events.
      */
-    private static final int GROW_SIZE = 4;
+    private static final int INITIAL_CAPACITY = 4;
 
     /**
-     * Level indicator used to decrease or increase size of this table.
+     * The listeners registered for all properties or null.
      */
-    private int level;
+    private volatile PropertyChangeListener[] allListeners;
 
-    private PropertyChangeListener[] listeners;
-
-    private String[] properties;
+    /**
+     * The listeners registered for a specific property, by property name. The
+     * map and the arrays are replaced, never modified, so listeners may be
+     * added or removed while an event is sent.
+     */
+    private volatile Map<String, PropertyChangeListener[]> listeners;
 
     /**
      * The object to be provided as the "source" for any generated events.
      */
     private Object source;
 
-    private PropertyChangeEvent delayedEvents[];
+    /**
+     * The delayed events, one per property, or null if not suspended. Only
+     * modified while holding the lock on this object.
+     */
+    private volatile PropertyChangeEvent delayedEvents[];
+
+    /**
+     * Number of delayed events. Guarded by the lock on this object.
+     */
+    private int delayedCount;
 
     /**
      * After calling this function, the change supported will delay the fire
      * events until resume is called.
      */
-    public void suspend() {
+    public synchronized void suspend() {
         if (this.delayedEvents == null) {
-            this.delayedEvents = new PropertyChangeEvent[GROW_SIZE];
+            this.delayedEvents = new PropertyChangeEvent[INITIAL_CAPACITY];
+            this.delayedCount = 0;
         }
     }
 
     /**
-     * Resume the fire events. Every delayed event are fired. Does nothing if
-     * suspend is not called.
+     * Resume the fire events. The delayed events are coalesced per property:
+     * a single event is fired with the first old value and the last new value.
+     * Properties changed back to their original value are not fired. Does
+     * nothing if suspend is not called.
      */
     public void resume() {
-        if (this.delayedEvents == null) {
-            return;
+        PropertyChangeEvent[] events;
+        int count;
+        synchronized (this) {
+            if (this.delayedEvents == null) {
+                return;
+            }
+            events = this.delayedEvents;
+            count = this.delayedCount;
+            this.delayedEvents = null;
+            this.delayedCount = 0;
         }
-        PropertyChangeEvent[] events = this.delayedEvents;
-        this.delayedEvents = null;
+        // Send the events without holding the lock
 
-        for (PropertyChangeEvent e : events) {
-            sendEvent(e);
+        for (int i = 0; i < count; i++) {
+            sendEvent(events[i]);
         }
 
     }
@@ -157,7 +183,9 @@ public class ManagedObjectChangeSupport implements Serializable {
             // Call two argument add method.
             addPropertyChangeListener(proxy.getPropertyName(), (PropertyChangeListener) proxy.getListener());
         } else {
-            addPropertyChangeListener(ALL_PROPERTIES, listener);
+            synchronized (this) {
+                this.allListeners = append(this.allListeners, listener);
+            }
         }
     }
 
@@ -193,12 +221,11 @@ public class ManagedObjectChangeSupport implements Serializable {
      */
     public void firePropertyChange(PropertyChangeEvent event) {
         // Check if the change support is currently in suspend mode
-        if (this.delayedEvents != null) {
-            delayFireEvent(event);
+        if (this.delayedEvents != null && delayFireEvent(event)) {
             return;
         }
 
-        if (this.properties == null || this.listeners == null) {
+        if (!hasListeners(event.getPropertyName())) {
             return;
         }
         Object oldValue = event.getOldValue();
@@ -226,7 +253,7 @@ public class ManagedObjectChangeSupport implements Serializable {
      *            the new value of the property
      */
     public void firePropertyChange(String propertyName, boolean oldValue, boolean newValue) {
-        if (oldValue != newValue) {
+        if (oldValue != newValue && isFired(propertyName)) {
             firePropertyChange(propertyName, Boolean.valueOf(oldValue), Boolean.valueOf(newValue));
         }
     }
@@ -249,7 +276,7 @@ public class ManagedObjectChangeSupport implements Serializable {
      *            the new value of the property
      */
     public void firePropertyChange(String propertyName, int oldValue, int newValue) {
-        if (oldValue != newValue) {
+        if (oldValue != newValue && isFired(propertyName)) {
             firePropertyChange(propertyName, Integer.valueOf(oldValue), Integer.valueOf(newValue));
         }
     }
@@ -271,7 +298,7 @@ public class ManagedObjectChangeSupport implements Serializable {
      *            the new value of the property
      */
     public void firePropertyChange(String propertyName, Object oldValue, Object newValue) {
-        if (oldValue == null || newValue == null || !oldValue.equals(newValue)) {
+        if (isFired(propertyName) && (oldValue == null || newValue == null || !oldValue.equals(newValue))) {
             firePropertyChange(new PropertyChangeEvent(this.source, propertyName, oldValue, newValue));
         }
     }
@@ -306,15 +333,28 @@ public class ManagedObjectChangeSupport implements Serializable {
      * @since 1.4
      */
     public PropertyChangeListener[] getPropertyChangeListeners() {
-        PropertyChangeListener[] list = new PropertyChangeListener[this.properties.length];
+        PropertyChangeListener[] all = this.allListeners;
+        Map<String, PropertyChangeListener[]> map = this.listeners;
+        int count = all != null ? all.length : 0;
+        if (map != null) {
+            for (PropertyChangeListener[] array : map.values()) {
+                count += array.length;
+            }
+        }
+        PropertyChangeListener[] list = new PropertyChangeListener[count];
         int j = 0;
-        for (int i = 0; i < this.properties.length; i++) {
-            if (this.properties[i].equals(ALL_PROPERTIES)) {
-                list[j] = this.listeners[i];
-                j++;
+        if (all != null) {
+            System.arraycopy(all, 0, list, 0, all.length);
+            j = all.length;
+        }
+        if (map != null) {
+            for (Map.Entry<String, PropertyChangeListener[]> e : map.entrySet()) {
+                for (PropertyChangeListener listener : e.getValue()) {
+                    list[j++] = new PropertyChangeListenerProxy(e.getKey(), listener);
+                }
             }
         }
-        return Arrays.copyOf(list, j);
+        return list;
     }
 
     /**
@@ -329,15 +369,9 @@ public class ManagedObjectChangeSupport implements Serializable {
      * @since 1.4
      */
     public PropertyChangeListener[] getPropertyChangeListeners(String propertyName) {
-        PropertyChangeListener[] list = new PropertyChangeListener[this.properties.length];
-        int j = 0;
-        for (int i = 0; i < this.properties.length; i++) {
-            if (this.properties[i].equals(propertyName)) {
-                list[j] = this.listeners[i];
-                j++;
-            }
-        }
-        return Arrays.copyOf(list, j);
+        Map<String, PropertyChangeListener[]> map = this.listeners;
+        PropertyChangeListener[] array = propertyName != null && map != null ? map.get(propertyName) : null;
+        return array != null ? array.clone() : new PropertyChangeListener[0];
     }
 
     /**
@@ -350,81 +384,103 @@ public class ManagedObjectChangeSupport implements Serializable {
      * @return true if there are one or more listeners for the given property
      */
     public boolean hasListeners(String propertyName) {
-        int i = 0;
-        while (i < this.properties.length && (this.properties[i] == null || !this.properties[i].equals(propertyName))) {
-            i++;
+        if (this.allListeners != null) {
+            return true;
         }
-        return i < this.properties.length;
+        Map<String, PropertyChangeListener[]> map = this.listeners;
+        return propertyName != null && map != null && map.containsKey(propertyName);
     }
 
-    private void hook(String propertyName, PropertyChangeListener listener) {
-        // Initialize arrays
-        if (this.properties == null) this.properties = new String[GROW_SIZE];
-        if (this.listeners == null) this.listeners = new PropertyChangeListener[GROW_SIZE];
-
-        // Find an empty index
-        int length = this.properties.length;
-        int index = length - 1;
-        while (index >= 0) {
-            if (this.properties[index] != null) {
-                break;
-            }
-            --index;
-        }
-        index++;
-        if (index == length) {
-            // Increase arrays size
-            String[] newProperties = new String[length + GROW_SIZE];
-            PropertyChangeListener[] newListeners = new PropertyChangeListener[length + GROW_SIZE];
-            System.arraycopy(this.properties, 0, newProperties, 0, length);
-            System.arraycopy(this.listeners, 0, newListeners, 0, length);
-            this.properties = newProperties;
-            this.listeners = newListeners;
-        }
-        this.properties[index] = propertyName;
-        this.listeners[index] = listener;
+    /**
+     * Check if an event for the given property must be created: either it's
+     * delayed or some listeners will receive it.
+     */
+    private boolean isFired(String propertyName) {
+        return this.delayedEvents != null || hasListeners(propertyName);
     }
 
-    private void delayFireEvent(PropertyChangeEvent event) {
-        if (this.delayedEvents == null) return;
-        // Find an empty index
-        int length = this.delayedEvents.length;
-        int index = length - 1;
-        while (index >= 0) {
-            if (this.delayedEvents[index] != null) {
-                break;
+    /**
+     * Return a copy of the given array with the listener added at the end.
+     */
+    private static PropertyChangeListener[] append(PropertyChangeListener[] array, PropertyChangeListener listener) {
+        if (array == null) {
+            return new PropertyChangeListener[] { listener };
+        }
+        PropertyChangeListener[] newArray = new PropertyChangeListener[array.length + 1];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        newArray[array.length] = listener;
+        return newArray;
+    }
+
+    /**
+     * Return a copy of the given array with the first occurrence of the
+     * listener removed.
+     * 
+     * @return the same array if the listener is not found or null if the array
+     *         is empty.
+     */
+    private static PropertyChangeListener[] remove(PropertyChangeListener[] array, EventListener listener) {
+        if (array == null) {
+            return null;
+        }
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] == listener) {
+                if (array.length == 1) {
+                    return null;
+                }
+                PropertyChangeListener[] newArray = new PropertyChangeListener[array.length - 1];
+                System.arraycopy(array, 0, newArray, 0, i);
+                System.arraycopy(array, i + 1, newArray, i, array.length - i - 1);
+                return newArray;
             }
-            --index;
         }
-        index++;
-        if (index == length) {
-            // Increase arrays size
-            PropertyChangeEvent[] newDelayedEvents = new PropertyChangeEvent[length + GROW_SIZE];
-            System.arraycopy(this.listeners, 0, newDelayedEvents, 0, length);
-            this.delayedEvents = newDelayedEvents;
+        return array;
+    }
+
+    private synchronized void hook(String propertyName, PropertyChangeListener listener) {
+        Map<String, PropertyChangeListener[]> map;
+        if (this.listeners == null) {
+            map = new HashMap<String, PropertyChangeListener[]>(4);
+        } else {
+            map = new HashMap<String, PropertyChangeListener[]>(this.listeners);
         }
-        this.delayedEvents[index] = event;
+        map.put(propertyName, append(map.get(propertyName), listener));
+        this.listeners = map;
     }
 
     /**
-     * Remove a listener from this notify table.
+     * Delay the given event if the change support is suspended.
      * 
-     * @param index
-     *            the index of the listener to be remove.
+     * @return true if the event is delayed, false if it must be sent.
      */
-    private void remove(int index) {
-        int i = index;
-        if (this.level == 0) {
-            // Move the data within the arrays
-            int end = this.properties.length - 1;
-            System.arraycopy(this.properties, i + 1, this.properties, i, end - i);
-            System.arraycopy(this.listeners, i + 1, this.listeners, i, end - i);
-            i = end;
-        } else {
-            if (this.level > 0) this.level = -this.level;
+    private synchronized boolean delayFireEvent(PropertyChangeEvent event) {
+        if (this.delayedEvents == null) return false;
+        String propertyName = event.getPropertyName();
+        if (propertyName != null) {
+            // Coalesce with the delayed event of the same property
+            for (int i = 0; i < this.delayedCount; i++) {
+                PropertyChangeEvent delayed = this.delayedEvents[i];
+                if (propertyName.equals(delayed.getPropertyName())) {
+                    Object oldValue = delayed.getOldValue();
+                    Object newValue = event.getNewValue();
+                    if (oldValue == null ? newValue == null : oldValue.equals(newValue)) {
+                        // Back to the original value
+                        System.arraycopy(this.delayedEvents, i + 1, this.delayedEvents, i, this.delayedCount - i - 1);
+                        this.delayedEvents[--this.delayedCount] = null;
+                    } else {
+                        this.delayedEvents[i] = new PropertyChangeEvent(delayed.getSource(), propertyName, oldValue, newValue);
+                    }
+                    return true;
+                }
+            }
+        }
+        if (this.delayedCount == this.delayedEvents.length) {
+            PropertyChangeEvent[] newDelayedEvents = new PropertyChangeEvent[this.delayedCount * 2];
+            System.arraycopy(this.delayedEvents, 0, newDelayedEvents, 0, this.delayedCount);
+            this.delayedEvents = newDelayedEvents;
         }
-        this.properties[i] = null;
-        this.listeners[i] = null;
+        this.delayedEvents[this.delayedCount++] = event;
+        return true;
     }
 
     /**
@@ -447,7 +503,9 @@ public class ManagedObjectChangeSupport implements Serializable {
             // Call two argument remove method.
             removePropertyChangeListener(proxy.getPropertyName(), proxy.getListener());
         } else {
-            removePropertyChangeListener(ALL_PROPERTIES, listener);
+            synchronized (this) {
+                this.allListeners = remove(this.allListeners, listener);
+            }
         }
     }
 
@@ -479,48 +537,41 @@ public class ManagedObjectChangeSupport implements Serializable {
      *            the managed event
      */
     private void sendEvent(PropertyChangeEvent event) {
-        if (this.properties == null || this.listeners == null || event == null || event.getPropertyName() == null) {
+        if (event == null || event.getPropertyName() == null) {
             return;
         }
-        this.level += this.level >= 0 ? 1 : -1;
-        try {
-            // Send the vent to any listener matching the event type and class
-            // type
-            for (int i = 0; i < this.properties.length; i++) {
-                if ((this.properties[i].equals(ALL_PROPERTIES) || this.properties[i].equals(event.getPropertyName())) && this.listeners[i] != null) {
-                    this.listeners[i].propertyChange(event);
-                }
+        // Listeners added or removed while sending the event are not affected
+        PropertyChangeListener[] all = this.allListeners;
+        Map<String, PropertyChangeListener[]> map = this.listeners;
+        PropertyChangeListener[] named = map != null ? map.get(event.getPropertyName()) : null;
+        if (all != null) {
+            for (int i = 0; i < all.length; i++) {
+                all[i].propertyChange(event);
             }
-        } finally {
-            boolean compact = this.level < 0;
-            this.level -= this.level >= 0 ? 1 : -1;
-            if (compact && this.level == 0) {
-                int index = 0;
-                for (int i = 0; i < this.properties.length; i++) {
-                    if (this.properties[i] != null) {
-                        this.properties[index] = this.properties[i];
-                        this.listeners[index] = this.listeners[i];
-                        index++;
-                    }
-                }
-                for (int i = index; i < this.properties.length; i++) {
-                    this.properties[i] = null;
-                    this.listeners[i] = null;
-                }
+        }
+        if (named != null) {
+            for (int i = 0; i < named.length; i++) {
+                named[i].propertyChange(event);
             }
         }
     }
 
-    private void unhook(String propertyName, EventListener listener) {
+    private synchronized void unhook(String propertyName, EventListener listener) {
         if (propertyName == null || listener == null) {
             throw new NullPointerException();
         }
-        if (this.properties == null || this.listeners == null) return;
-        for (int i = 0; i < this.properties.length; i++) {
-            if (this.properties[i].equals(propertyName) && this.listeners[i] == listener) {
-                remove(i);
-                return;
-            }
+        if (this.listeners == null) return;
+        PropertyChangeListener[] array = this.listeners.get(propertyName);
+        PropertyChangeListener[] newArray = remove(array, listener);
+        if (newArray == array) {
+            return;
+        }
+        Map<String, PropertyChangeListener[]> map = new HashMap<String, PropertyChangeListener[]>(this.listeners);
+        if (newArray == null) {
+            map.remove(propertyName);
+        } else {
+            map.put(propertyName, newArray);
         }
+        this.listeners = map.isEmpty() ? null : map;
     }
-}
\ No newline at end of file
+}
@@ -22,12 +22,246 @@ import java.beans.PropertyDescriptor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.persistence.Transient;
 
+/**
+ * Utility functions to access the bean properties of managed objects.
+ * <p>
+ * The properties of each class are introspected once and kept in a cache with their accessors already made
+ * accessible, so reading, writing and copying properties only cost a map lookup and a reflective call.
+ * <p>
+ * When a {@link ManagedObjectAccessor} was generated at compile time for the class, it's used instead of the
+ * Introspector and reflection to copy, read and write the properties by name.
+ */
 public class ManagedObjectUtils {
 
+    /**
+     * Accessors of a bean property.
+     */
+    private static final class Accessor {
+
+        final PropertyDescriptor descriptor;
+
+        final Method readMethod;
+
+        final Method writeMethod;
+
+        Accessor(PropertyDescriptor descriptor) {
+            this.descriptor = descriptor;
+            this.readMethod = accessible(descriptor.getReadMethod());
+            this.writeMethod = accessible(descriptor.getWriteMethod());
+        }
+
+        /**
+         * Make the method accessible once.
+         */
+        private static Method accessible(Method method) {
+            if (method != null && !method.isAccessible()) {
+                try {
+                    method.setAccessible(true);
+                } catch (SecurityException e) {
+                    // Invoke the method as is
+                }
+            }
+            return method;
+        }
+
+        /**
+         * Check if the property should be copied by {@link ManagedObjectUtils#copyProperties(Object, Object)}.
+         */
+        boolean isCopyable() {
+            return this.readMethod != null && this.writeMethod != null && !"class".equals(this.descriptor.getName()) //$NON-NLS-1$
+                    && this.readMethod.getAnnotation(Transient.class) == null
+                    && this.writeMethod.getAnnotation(Transient.class) == null;
+        }
+
+    }
+
+    /**
+     * The properties of a bean class.
+     */
+    private static final class BeanMetadata {
+
+        /**
+         * The accessors by property name.
+         */
+        final Map<String, Accessor> accessors = new HashMap<String, Accessor>();
+
+        /**
+         * The accessors of the properties copied by {@link ManagedObjectUtils#copyProperties(Object, Object)}.
+         */
+        final Accessor[] copyable;
+
+        BeanMetadata(PropertyDescriptor[] descriptors) {
+            List<Accessor> list = new ArrayList<Accessor>();
+            for (PropertyDescriptor descriptor : descriptors) {
+                if (this.accessors.containsKey(descriptor.getName())) {
+                    continue;
+                }
+                Accessor accessor = new Accessor(descriptor);
+                this.accessors.put(descriptor.getName(), accessor);
+                if (accessor.isCopyable()) {
+                    list.add(accessor);
+                }
+            }
+            this.copyable = list.toArray(new Accessor[list.size()]);
+        }
+
+    }
+
+    /**
+     * Metadata of a class that can't be introspected.
+     */
+    private static final BeanMetadata EMPTY = new BeanMetadata(new PropertyDescriptor[0]);
+
+    /**
+     * The metadata by bean class.
+     */
+    private static final ConcurrentMap<Class<?>, BeanMetadata> METADATA = new ConcurrentHashMap<Class<?>, BeanMetadata>();
+
+    /**
+     * Return the metadata of the given class. The class is introspected on first call.
+     * 
+     * @param beanClass
+     *            the bean class or interface
+     * @return the metadata
+     */
+    private static BeanMetadata metadata(Class<?> beanClass) {
+        BeanMetadata metadata = METADATA.get(beanClass);
+        if (metadata != null) {
+            return metadata;
+        }
+        try {
+            PropertyDescriptor[] descriptors;
+            if (!beanClass.isInterface()) {
+                descriptors = Introspector.getBeanInfo(beanClass).getPropertyDescriptors();
+            } else {
+                List pds = new ArrayList();
+                getInterfacePropertyDescriptors(pds, beanClass);
+                descriptors = (PropertyDescriptor[]) pds.toArray(new PropertyDescriptor[pds.size()]);
+            }
+            metadata = new BeanMetadata(descriptors);
+        } catch (IntrospectionException e) {
+            // cannot introspect, give up
+            metadata = EMPTY;
+        }
+        BeanMetadata previous = METADATA.putIfAbsent(beanClass, metadata);
+        return previous != null ? previous : metadata;
+    }
+
+    /**
+     * A generated accessor with the index of its properties.
+     */
+    private static final class GeneratedAccessor {
+
+        /**
+         * The bean class handled by the accessor.
+         */
+        final Class<?> beanClass;
+
+        /**
+         * The generated accessor or null if not available.
+         */
+        final ManagedObjectAccessor accessor;
+
+        /**
+         * The property indexes by name.
+         */
+        final Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+        GeneratedAccessor(Class<?> beanClass, ManagedObjectAccessor accessor) {
+            this.beanClass = beanClass;
+            this.accessor = accessor;
+            if (accessor != null) {
+                String[] names = accessor.getPropertyNames();
+                for (int i = 0; i < names.length; i++) {
+                    this.indexes.put(names[i], Integer.valueOf(i));
+                }
+            }
+        }
+
+        /**
+         * Return the index of the given property or -1 if not handled by the generated accessor.
+         */
+        int indexOf(String propertyName) {
+            Integer index = this.indexes.get(propertyName);
+            return index != null ? index.intValue() : -1;
+        }
+
+    }
+
+    /**
+     * Used for classes without generated accessor.
+     */
+    private static final GeneratedAccessor NONE = new GeneratedAccessor(Object.class, null);
+
+    /**
+     * The generated accessor by bean class.
+     */
+    private static final ConcurrentMap<Class<?>, GeneratedAccessor> GENERATED = new ConcurrentHashMap<Class<?>, GeneratedAccessor>();
+
+    /**
+     * Return the generated accessor of the given class. The accessor is looked up on first call using the class
+     * loader of the bean class.
+     * 
+     * @param beanClass
+     *            the bean class
+     * @return the generated accessor or {@link #NONE}
+     */
+    private static GeneratedAccessor generated(Class<?> beanClass) {
+        GeneratedAccessor generated = GENERATED.get(beanClass);
+        if (generated != null) {
+            return generated;
+        }
+        generated = NONE;
+        if (!beanClass.isInterface() && !beanClass.isArray() && !beanClass.isPrimitive()) {
+            try {
+                Class<?> cls = Class.forName(beanClass.getName() + ManagedObjectAccessor.SUFFIX, true, beanClass.getClassLoader());
+                if (ManagedObjectAccessor.class.isAssignableFrom(cls)) {
+                    generated = new GeneratedAccessor(beanClass, (ManagedObjectAccessor) cls.newInstance());
+                }
+            } catch (ClassNotFoundException e) {
+                // Not generated, use the introspector
+            } catch (Exception e) {
+                // Can't be created, use the introspector
+            } catch (LinkageError e) {
+                // Generated for another version of the class, use the introspector
+            }
+        }
+        GeneratedAccessor previous = GENERATED.putIfAbsent(beanClass, generated);
+        return previous != null ? previous : generated;
+    }
+
+    /**
+     * Return the accessor generated at compile time for the given class.
+     * 
+     * @param beanClass
+     *            the bean class
+     * @return the generated accessor or null if not available.
+     */
+    static ManagedObjectAccessor getGeneratedAccessor(Class<?> beanClass) {
+        return generated(beanClass).accessor;
+    }
+
+    /**
+     * Return the cached accessor of the given property.
+     * 
+     * @return the accessor or null if not found.
+     */
+    private static Accessor accessor(Class<?> beanClass, PropertyDescriptor propertyDescriptor) {
+        Accessor accessor = metadata(beanClass).accessors.get(propertyDescriptor.getName());
+        if (accessor == null || (accessor.descriptor != propertyDescriptor && !accessor.descriptor.equals(propertyDescriptor))) {
+            return null;
+        }
+        return accessor;
+    }
+
     public static void copyProperties(Object orig, Object dest) throws IllegalAccessException, InvocationTargetException {
 
         // Validate existence of the specified beans
@@ -38,37 +272,55 @@ public class ManagedObjectUtils {
             throw new IllegalArgumentException("No origin specified");
         }
 
-        BeanInfo beanInfo;
-        try {
-            beanInfo = Introspector.getBeanInfo(orig.getClass());
-        } catch (IntrospectionException e) {
-            // cannot introspect, give up
+        GeneratedAccessor generated = generated(orig.getClass());
+        if (generated.accessor != null && generated.beanClass.isInstance(dest)) {
+            generated.accessor.copy(orig, dest);
             return;
         }
 
-        PropertyDescriptor[] origDescriptors = beanInfo.getPropertyDescriptors();
-        for (int i = 0; i < origDescriptors.length; i++) {
-            String name = origDescriptors[i].getName();
-            if ("class".equals(name)) {
-                continue; // No point in trying to set an object's class
-            }
-            if (origDescriptors[i].getReadMethod().getAnnotation(Transient.class) != null
-                    || origDescriptors[i].getWriteMethod().getAnnotation(Transient.class) != null) {
-                // Don't copy transient value.
-                continue;
-            }
-            if (origDescriptors[i].getReadMethod() != null && origDescriptors[i].getWriteMethod() != null) {
-                // Copy the property value if it changed
-                Object newValue = readProperty(orig, origDescriptors[i]);
-                Object oldValue = readProperty(dest, origDescriptors[i]);
-                if (newValue != oldValue) {
-                    writeProperty(dest, origDescriptors[i], newValue);
-                }
+        for (Accessor accessor : metadata(orig.getClass()).copyable) {
+            // Copy the property value if it changed
+            Object newValue = read(orig, accessor.descriptor, accessor.readMethod);
+            Object oldValue = read(dest, accessor.descriptor, accessor.readMethod);
+            if (newValue != oldValue) {
+                write(dest, accessor.descriptor, accessor.writeMethod, newValue);
             }
         }
 
     }
 
+    /**
+     * Copy the value of a single property if not the same.
+     * 
+     * @param orig
+     *            the origin bean
+     * @param dest
+     *            the destination bean
+     * @param propertyName
+     *            the property to copy
+     * @return false if the property doesn't have a getter and a setter.
+     */
+    static boolean copyProperty(Object orig, Object dest, String propertyName) {
+        GeneratedAccessor generated = generated(orig.getClass());
+        int index = generated.indexOf(propertyName);
+        if (index >= 0 && generated.beanClass.isInstance(dest)) {
+            Object newValue = generated.accessor.read(orig, index);
+            if (newValue != generated.accessor.read(dest, index)) {
+                generated.accessor.write(dest, index, newValue);
+            }
+            return true;
+        }
+        Accessor accessor = metadata(orig.getClass()).accessors.get(propertyName);
+        if (accessor == null || accessor.readMethod == null || accessor.writeMethod == null) {
+            return false;
+        }
+        Object newValue = read(orig, accessor.descriptor, accessor.readMethod);
+        if (newValue != read(dest, accessor.descriptor, accessor.readMethod)) {
+            write(dest, accessor.descriptor, accessor.writeMethod, newValue);
+        }
+        return true;
+    }
+
     /**
      * Returns the element type of the given collection-typed property for the given bean.
      * 
@@ -110,38 +362,13 @@ public class ManagedObjectUtils {
      * @return the PropertyDescriptor for the named property on the given bean class
      */
     public static PropertyDescriptor getPropertyDescriptor(Class beanClass, String propertyName) {
-        if (!beanClass.isInterface()) {
-            BeanInfo beanInfo;
-            try {
-                beanInfo = Introspector.getBeanInfo(beanClass);
-            } catch (IntrospectionException e) {
-                // cannot introspect, give up
-                return null;
-            }
-            PropertyDescriptor[] propertyDescriptors = beanInfo.getPropertyDescriptors();
-            for (int i = 0; i < propertyDescriptors.length; i++) {
-                PropertyDescriptor descriptor = propertyDescriptors[i];
-                if (descriptor.getName().equals(propertyName)) {
-                    return descriptor;
-                }
-            }
-        } else {
-            try {
-                PropertyDescriptor propertyDescriptors[];
-                List pds = new ArrayList();
-                getInterfacePropertyDescriptors(pds, beanClass);
-                if (pds.size() > 0) {
-                    propertyDescriptors = (PropertyDescriptor[]) pds.toArray(new PropertyDescriptor[pds.size()]);
-                    PropertyDescriptor descriptor;
-                    for (int i = 0; i < propertyDescriptors.length; i++) {
-                        descriptor = propertyDescriptors[i];
-                        if (descriptor.getName().equals(propertyName)) return descriptor;
-                    }
-                }
-            } catch (IntrospectionException e) {
-                // cannot introspect, give up
-                return null;
-            }
+        BeanMetadata metadata = metadata(beanClass);
+        if (metadata == EMPTY) {
+            return null;
+        }
+        Accessor accessor = metadata.accessors.get(propertyName);
+        if (accessor != null) {
+            return accessor.descriptor;
         }
         throw new IllegalArgumentException("Could not find property with name " + propertyName + " in class " + beanClass); //$NON-NLS-1$ //$NON-NLS-2$
     }
@@ -157,7 +384,18 @@ public class ManagedObjectUtils {
      *            the new value of the property
      */
     public static void writeProperty(Object source, String propertyName, Object value) {
-        writeProperty(source, getPropertyDescriptor(source.getClass(), propertyName), value);
+        GeneratedAccessor generated = generated(source.getClass());
+        int index = generated.indexOf(propertyName);
+        if (index >= 0) {
+            generated.accessor.write(source, index, value);
+            return;
+        }
+        Accessor accessor = metadata(source.getClass()).accessors.get(propertyName);
+        if (accessor == null) {
+            writeProperty(source, getPropertyDescriptor(source.getClass(), propertyName), value);
+            return;
+        }
+        write(source, accessor.descriptor, accessor.writeMethod, value);
     }
 
     /**
@@ -171,16 +409,20 @@ public class ManagedObjectUtils {
      *            the new value of the property
      */
     public static void writeProperty(Object source, PropertyDescriptor propertyDescriptor, Object value) {
+        Accessor accessor = accessor(source.getClass(), propertyDescriptor);
+        write(source, propertyDescriptor, accessor != null ? accessor.writeMethod : Accessor.accessible(propertyDescriptor.getWriteMethod()), value);
+    }
+
+    /**
+     * Invoke the write method.
+     */
+    private static void write(Object source, PropertyDescriptor propertyDescriptor, Method writeMethod, Object value) {
         try {
-            Method writeMethod = propertyDescriptor.getWriteMethod();
             if (null == writeMethod) {
                 throw new IllegalArgumentException("Missing public setter method for " //$NON-NLS-1$
                         + propertyDescriptor.getName()
                         + " property"); //$NON-NLS-1$
             }
-            if (!writeMethod.isAccessible()) {
-                writeMethod.setAccessible(true);
-            }
             writeMethod.invoke(source, new Object[] { value });
         } catch (InvocationTargetException e) {
             /*
@@ -202,7 +444,16 @@ public class ManagedObjectUtils {
      * @return the contents of the given property for the given bean.
      */
     public static Object readProperty(Object source, String propertyName) {
-        return readProperty(source, getPropertyDescriptor(source.getClass(), propertyName));
+        GeneratedAccessor generated = generated(source.getClass());
+        int index = generated.indexOf(propertyName);
+        if (index >= 0) {
+            return generated.accessor.read(source, index);
+        }
+        Accessor accessor = metadata(source.getClass()).accessors.get(propertyName);
+        if (accessor == null) {
+            return readProperty(source, getPropertyDescriptor(source.getClass(), propertyName));
+        }
+        return read(source, accessor.descriptor, accessor.readMethod);
     }
 
     /**
@@ -215,14 +466,18 @@ public class ManagedObjectUtils {
      * @return the contents of the given property for the given bean.
      */
     public static Object readProperty(Object source, PropertyDescriptor propertyDescriptor) {
+        Accessor accessor = accessor(source.getClass(), propertyDescriptor);
+        return read(source, propertyDescriptor, accessor != null ? accessor.readMethod : Accessor.accessible(propertyDescriptor.getReadMethod()));
+    }
+
+    /**
+     * Invoke the read method.
+     */
+    private static Object read(Object source, PropertyDescriptor propertyDescriptor, Method readMethod) {
         try {
-            Method readMethod = propertyDescriptor.getReadMethod();
             if (readMethod == null) {
                 throw new IllegalArgumentException(propertyDescriptor.getName() + " property does not have a read method."); //$NON-NLS-1$
             }
-            if (!readMethod.isAccessible()) {
-                readMethod.setAccessible(true);
-            }
             return readMethod.invoke(source, (Object[]) null);
         } catch (InvocationTargetException e) {
             /*
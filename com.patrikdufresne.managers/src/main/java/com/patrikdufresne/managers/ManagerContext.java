@@ -91,6 +91,19 @@ public class ManagerContext {
         return this.events;
     }
 
+    /**
+     * Return the current event table and replace it by a new one. Used to hand
+     * the events of a committed transaction to the observers without copying
+     * them.
+     * 
+     * @return the event table.
+     */
+    EventTable detachEventTable() {
+        EventTable table = getEventTable();
+        this.events = null;
+        return table;
+    }
+
     /**
      * return the default session if there is a default context.
      * 
@@ -63,7 +63,9 @@ public class ManagerEvent {
      */
     public Collection<Object> objects;
     /**
-     * Not used.
+     * Names of the properties modified by an UPDATE event. Null when unknown
+     * (e.g.: a detached object being updated), in which case every property
+     * should be considered modified. Always null for ADD and REMOVE events.
      */
     public String[] properties;
 
@@ -17,8 +17,15 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.hibernate.FlushMode;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.SessionFactoryObserver;
@@ -34,6 +41,7 @@ import org.hibernate.metamodel.source.MetadataImplementor;
 import org.hibernate.service.BootstrapServiceRegistryBuilder;
 import org.hibernate.service.ServiceRegistry;
 import org.hibernate.service.ServiceRegistryBuilder;
+import org.hibernate.service.jdbc.connections.spi.ConnectionProvider;
 import org.hibernate.service.spi.SessionFactoryServiceRegistry;
 
 /**
@@ -51,6 +59,42 @@ public abstract class Managers {
 
     private SessionFactory factory;
 
+    /**
+     * Executor sending the events when the asynchronous dispatch is enabled. Null otherwise.
+     */
+    private volatile ExecutorService dispatcher;
+
+    /**
+     * The thread used by the dispatcher.
+     */
+    private volatile Thread dispatcherThread;
+
+    /**
+     * Lock used to enable or disable the dispatcher. Also held to commit a transaction and queue its events so they
+     * are queued in commit order.
+     */
+    private final Object dispatcherLock = new Object();
+
+    /**
+     * First exception raised by an observer called by the dispatcher. Thrown by {@link #flushEvents()}.
+     */
+    private RuntimeException dispatchFailure;
+
+    /**
+     * Number of transactions committing modifications for which the events are not yet sent.
+     */
+    private int pendingCommits;
+
+    /**
+     * Incremented every time a transaction committing modifications has sent its events.
+     */
+    private long modificationStamp;
+
+    /**
+     * The listener tracking the entities. Set when the session factory is created.
+     */
+    private CustomListener listener;
+
     /**
      * Hibernate integrator
      */
@@ -68,6 +112,7 @@ public abstract class Managers {
         public void integrate(Configuration config, SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
 
             CustomListener listener = new CustomListener();
+            Managers.this.listener = listener;
 
             EventListenerRegistry eventListenerRegistry = serviceRegistry.getService(EventListenerRegistry.class);
             eventListenerRegistry.appendListeners(EventType.POST_INSERT, listener);
@@ -172,6 +217,24 @@ public abstract class Managers {
         this.eventManager.hook(eventType, cls, observer);
     }
 
+    /**
+     * Add the given observer to the list of observer being notify when an object of the given class type is added,
+     * updated or deleted. The UPDATE events are sent to the observer only if one of the given properties is modified or
+     * if the modified properties are unknown.
+     * 
+     * @param eventType
+     *            the event type
+     * @param cls
+     *            the class type
+     * @param properties
+     *            the property names or null for any property
+     * @param observer
+     *            the observer
+     */
+    public void addObserver(int eventType, Class<?> cls, String[] properties, IManagerObserver observer) {
+        this.eventManager.hook(eventType, cls, properties, observer);
+    }
+
     /**
      * Archive the given objects.
      * <p>
@@ -220,6 +283,7 @@ public abstract class Managers {
      * Disposed this managers and close sessions.
      */
     public void dispose() {
+        setAsyncDispatch(false);
         if (this.factory != null) {
             this.factory.close();
         }
@@ -234,7 +298,7 @@ public abstract class Managers {
      * @throws ManagerException
      */
     public void exec(Exec runnable) throws ManagerException {
-        run(runnable);
+        run(runnable, false);
     }
 
     /**
@@ -248,7 +312,7 @@ public abstract class Managers {
      * @throws ManagerException
      */
     public <T> T get(final Class<T> cls, final Serializable id) throws ManagerException {
-        return query(new Query<T>() {
+        return queryReadOnly(new Query<T>() {
             @Override
             public T run() throws ManagerException {
                 return (T) ManagerContext.getDefaultSession().get(cls, id);
@@ -267,6 +331,31 @@ public abstract class Managers {
      */
     public abstract IManager<ManagedObject> getManagerForClass(Class<? extends ManagedObject> clazz);
 
+    /**
+     * Returns the connection pool used by this managers. May be used to retrieve the pool statistics.
+     * 
+     * @return the connection pool or null if the configuration doesn't use the {@link PooledConnectionProvider}.
+     */
+    public PooledConnectionProvider getConnectionPool() {
+        if (this.factory == null) {
+            return null;
+        }
+        ConnectionProvider provider = ((SessionFactoryImplementor) this.factory).getServiceRegistry().getService(ConnectionProvider.class);
+        if (provider == null || !provider.isUnwrappableAs(PooledConnectionProvider.class)) {
+            return null;
+        }
+        return provider.unwrap(PooledConnectionProvider.class);
+    }
+
+    /**
+     * Return the listener tracking the entities of this managers.
+     * 
+     * @return the listener
+     */
+    CustomListener getListener() {
+        return this.listener;
+    }
+
     /**
      * Returns the session factory.
      * 
@@ -284,6 +373,96 @@ public abstract class Managers {
         return this.config.getProperty(Environment.URL);
     }
 
+    /**
+     * Check if the events are sent asynchronously.
+     * 
+     * @return True if the asynchronous dispatch is enabled.
+     */
+    public boolean isAsyncDispatch() {
+        return this.dispatcher != null;
+    }
+
+    /**
+     * Enable or disable the asynchronous dispatch of events. When enabled, the events of a committed transaction are
+     * sent to the observers by a dedicated thread and the writer returns as soon as the transaction is committed. The
+     * events are sent in the same order as the transactions are committed. Use {@link #flushEvents()} to wait for the
+     * events to be sent.
+     * <p>
+     * When disabled, the pending events are sent before returning.
+     * 
+     * @param enabled
+     *            True to enable the asynchronous dispatch.
+     */
+    public void setAsyncDispatch(boolean enabled) {
+        ExecutorService executor;
+        synchronized (this.dispatcherLock) {
+            executor = this.dispatcher;
+            if (enabled && executor == null) {
+                this.dispatcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "managers-events"); //$NON-NLS-1$
+                        thread.setDaemon(true);
+                        Managers.this.dispatcherThread = thread;
+                        return thread;
+                    }
+                });
+            } else if (!enabled && executor != null) {
+                this.dispatcher = null;
+                executor.shutdown();
+            }
+        }
+        // Wait for the pending events outside the lock since the dispatcher
+        // thread synchronize on this managers.
+        if (!enabled && executor != null && Thread.currentThread() != this.dispatcherThread) {
+            try {
+                while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    // Keep waiting
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Wait until the events of the committed transactions are sent to the observers. Return immediately if the
+     * asynchronous dispatch is disabled or when called by an observer.
+     * <p>
+     * If an observer raised an exception while the events were sent asynchronously, the first exception is thrown
+     * once and the following are discarded.
+     */
+    public void flushEvents() {
+        if (Thread.currentThread() == this.dispatcherThread) {
+            return;
+        }
+        ExecutorService executor = this.dispatcher;
+        if (executor != null) {
+            try {
+                executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Nothing to do
+                    }
+                }).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // Can't happen
+            } catch (RejectedExecutionException e) {
+                // The asynchronous dispatch was disabled concurrently, the pending events are sent.
+            }
+        }
+        RuntimeException failure;
+        synchronized (this.dispatcherLock) {
+            failure = this.dispatchFailure;
+            this.dispatchFailure = null;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
     /**
      * Check if database is read-only.
      * 
@@ -307,7 +486,25 @@ public abstract class Managers {
 
     @SuppressWarnings("unchecked")
     public <E> E query(Query<E> runnable) throws ManagerException {
-        return (E) run(runnable);
+        return (E) run(runnable, false);
+    }
+
+    /**
+     * Run a query within a read-only transaction. The loaded entities are read-only: Hibernate doesn't keep their
+     * snapshot, doesn't dirty check them and doesn't flush the session on commit. The JDBC connection is also marked as
+     * read-only for the duration of the transaction.
+     * <p>
+     * The query must not modify the database, the modifications would be silently lost. When called within an existing
+     * transaction, the query run within that transaction.
+     * 
+     * @param runnable
+     *            the query to run
+     * @return the query result
+     * @throws ManagerException
+     */
+    @SuppressWarnings("unchecked")
+    public <E> E queryReadOnly(Query<E> runnable) throws ManagerException {
+        return (E) run(runnable, true);
     }
 
     /**
@@ -347,14 +544,69 @@ public abstract class Managers {
         this.eventManager.unhook(eventType, cls, observer);
     }
 
+    /**
+     * Called before committing a transaction with modifications.
+     */
+    private synchronized void beginModification() {
+        this.pendingCommits++;
+    }
+
+    /**
+     * Called once the events of a transaction with modifications are sent or when the transaction is rolled back.
+     */
+    private synchronized void endModification() {
+        this.pendingCommits--;
+        this.modificationStamp++;
+    }
+
+    /**
+     * Return a stamp changing every time a transaction modifying the database is committed. Used to detect
+     * modifications while computing a value to be maintained by the events.
+     * 
+     * @return the stamp or -1 if a transaction is being committed and its events are not sent yet.
+     */
+    synchronized long getModificationStamp() {
+        return this.pendingCommits > 0 ? -1 : this.modificationStamp;
+    }
+
+    /**
+     * Task sending the events of a committed transaction when the asynchronous dispatch is enabled.
+     */
+    private class DispatchEvents implements Runnable {
+
+        private final EventTable table;
+
+        DispatchEvents(EventTable table) {
+            this.table = table;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Managers.this.eventManager.sendEvents(this.table);
+            } catch (RuntimeException e) {
+                // Keep the failure to be thrown by flushEvents().
+                synchronized (Managers.this.dispatcherLock) {
+                    if (Managers.this.dispatchFailure == null) {
+                        Managers.this.dispatchFailure = e;
+                    }
+                }
+            } finally {
+                endModification();
+            }
+        }
+    }
+
     /**
      * This function is used to run a runnable within a safe context for hibernate session.
      * 
      * @param runnable
+     * @param readOnly
+     *            True to run the runnable within a read-only transaction.
      * @throws ManagerException
      */
     @SuppressWarnings("rawtypes")
-    private Object run(Object runnable) throws ManagerException {
+    private Object run(Object runnable, boolean readOnly) throws ManagerException {
 
         Object result = null;
         if (ManagerContext.getDefaultSession() == null) {
@@ -376,23 +628,59 @@ public abstract class Managers {
                 session.close();
                 throw new ManagerException("can't begin a transaction", e);
             }
+            boolean modified = false;
+            boolean dispatched = false;
             // Sets the default session to use within this manager context.
             ManagerContext.setDefaultSession(session);
             ManagerContext.getDefault().getEventTable().clear();
             try {
+                if (readOnly) {
+                    // No snapshot for the loaded entities and no flush on commit
+                    session.setDefaultReadOnly(true);
+                    session.setFlushMode(FlushMode.MANUAL);
+                    setConnectionReadOnly(session, true);
+                }
                 // Run the runnable
                 if (runnable instanceof Query) {
                     result = ((Query) runnable).run();
                 } else {
                     ((Exec) runnable).run();
                 }
+                // Flush the modifications to know if the transaction modify
+                // the database before committing
+                if (!readOnly) {
+                    session.flush();
+                }
+                if (ManagerContext.getDefault().getEventTable().size() > 0) {
+                    modified = true;
+                    beginModification();
+                }
+                // Restore the connection before it's released by the commit
+                if (readOnly) {
+                    setConnectionReadOnly(session, false);
+                }
                 // Commit to database & close session
-                ManagerContext.getDefault().getSession().getTransaction().commit();
+                if (modified && this.dispatcher != null) {
+                    dispatched = commitAndDispatch();
+                } else {
+                    ManagerContext.getDefault().getSession().getTransaction().commit();
+                }
             } catch (Throwable e) {
                 // Error occurred within the transaction/runnable. Rollback any
                 // modification and close the session so next run will create a
                 // new session.
+                if (readOnly) {
+                    try {
+                        setConnectionReadOnly(session, false);
+                    } catch (RuntimeException e2) {
+                        // The connection is probably broken, keep the original
+                        // exception
+                    }
+                }
                 ManagerContext.getDefault().getSession().getTransaction().rollback();
+                if (modified) {
+                    endModification();
+                }
                 if (runnable instanceof SafeQuery) {
                     ((SafeQuery) runnable).handleException(e);
                 } else if (runnable instanceof SafeExec) {
@@ -404,11 +692,17 @@ public abstract class Managers {
                 ManagerContext.setDefaultSession(null);
             }
             // Notify observers
-            EventTable table = ManagerContext.getDefault().getEventTable();
-            if (table.size() > 0) {
-                table = table.clone();
-                this.eventManager.sendEvents(table);
-                table.clear();
+            if (!dispatched) {
+                EventTable table = ManagerContext.getDefault().detachEventTable();
+                try {
+                    if (table.size() > 0) {
+                        this.eventManager.sendEvents(table);
+                    }
+                } finally {
+                    if (modified) {
+                        endModification();
+                    }
+                }
             }
         } else {
             // There is a current context, so let re-use it
@@ -421,6 +715,41 @@ public abstract class Managers {
         return result;
     }
 
+    /**
+     * Mark the JDBC connection of the given session as read-only or not.
+     * 
+     * @param session
+     *            the session
+     * @param readOnly
+     *            the read-only flag
+     */
+    private static void setConnectionReadOnly(Session session, final boolean readOnly) {
+        session.doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                connection.setReadOnly(readOnly);
+            }
+        });
+    }
+
+    /**
+     * Commit the transaction of the current context and queue its events to the dispatcher. Both are done while
+     * holding the dispatcher lock, otherwise the events of concurrent transactions may be queued in a different order
+     * than the commits.
+     * 
+     * @return True if the events were queued. False if the asynchronous dispatch was disabled concurrently.
+     */
+    private boolean commitAndDispatch() {
+        synchronized (this.dispatcherLock) {
+            ManagerContext.getDefault().getSession().getTransaction().commit();
+            if (this.dispatcher == null) {
+                return false;
+            }
+            this.dispatcher.execute(new DispatchEvents(ManagerContext.getDefault().detachEventTable()));
+            return true;
+        }
+    }
+
     /**
      * Start the h2db server.
      * 
@@ -16,18 +16,27 @@
 package com.patrikdufresne.managers;
 
 import java.io.Serializable;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.collections.map.AbstractReferenceMap;
-import org.apache.commons.collections.map.ReferenceIdentityMap;
-
 /**
  * This class is used to keep track of any entity instance during the time life of the managers. It keep a weak
  * reference to the object to the garbage collector may un-allocate the object. Before the object is freed, this class
  * is a cache for entities.
+ * <p>
+ * The references cleared by the garbage collector are collected through a reference queue and removed on the next
+ * call, so the tracker doesn't grow with the number of entities ever loaded. Integer ids are stored in a primitive
+ * open addressing map and the instances of an id are held in a single reference or in a compact array when many
+ * instances share the same id.
+ * <p>
+ * This class is thread safe. The ids are spread over stripes with their own lock, so threads loading different
+ * entities don't wait on each other.
  * 
  * @author Patrik Dufresne
  * 
@@ -35,17 +44,404 @@ import org.apache.commons.collections.map.ReferenceIdentityMap;
 public class ObjectIdentityTracker {
 
     /**
-     * The cache list.
+     * Weak reference to a tracked instance. Keep its bucket and id to be removed once cleared.
      */
-    private Map<String, Map<Serializable, ReferenceIdentityMap>> cache;
+    private static final class TrackedReference extends WeakReference<Object> {
+
+        final Bucket bucket;
+
+        final Serializable id;
+
+        TrackedReference(Object entity, ReferenceQueue<Object> queue, Bucket bucket, Serializable id) {
+            super(entity, queue);
+            this.bucket = bucket;
+            this.id = id;
+        }
+
+    }
 
     /**
-     * Used internally to create a reference-map instance.
-     * 
-     * @return the map.
+     * Map of int keys using open addressing with linear probing.
      */
-    private ReferenceIdentityMap createReferenceMap() {
-        return new ReferenceIdentityMap(AbstractReferenceMap.WEAK, AbstractReferenceMap.HARD);
+    private static final class IntMap {
+
+        private int[] keys = new int[8];
+
+        private int size;
+
+        private Object[] values = new Object[8];
+
+        /**
+         * Mix the bits of the key since ids are sequential.
+         */
+        private static int hash(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        private int indexOf(int key) {
+            int mask = this.keys.length - 1;
+            int i = hash(key) & mask;
+            while (this.values[i] != null) {
+                if (this.keys[i] == key) {
+                    return i;
+                }
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        Object get(int key) {
+            int i = indexOf(key);
+            return i < 0 ? null : this.values[i];
+        }
+
+        void put(int key, Object value) {
+            if ((this.size + 1) * 2 > this.keys.length) {
+                resize(this.keys.length * 2);
+            }
+            int mask = this.keys.length - 1;
+            int i = hash(key) & mask;
+            while (this.values[i] != null) {
+                if (this.keys[i] == key) {
+                    this.values[i] = value;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            this.keys[i] = key;
+            this.values[i] = value;
+            this.size++;
+        }
+
+        Object remove(int key) {
+            int i = indexOf(key);
+            if (i < 0) {
+                return null;
+            }
+            Object old = this.values[i];
+            // Shift back the following entries of the cluster
+            int mask = this.keys.length - 1;
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (this.values[j] == null) {
+                    break;
+                }
+                int k = hash(this.keys[j]) & mask;
+                if (i <= j ? (i < k && k <= j) : (i < k || k <= j)) {
+                    continue;
+                }
+                this.keys[i] = this.keys[j];
+                this.values[i] = this.values[j];
+                i = j;
+            }
+            this.values[i] = null;
+            this.size--;
+            return old;
+        }
+
+        private void resize(int capacity) {
+            int[] oldKeys = this.keys;
+            Object[] oldValues = this.values;
+            this.keys = new int[capacity];
+            this.values = new Object[capacity];
+            this.size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        int size() {
+            return this.size;
+        }
+
+    }
+
+    /**
+     * The instances of one entity name. Each id is mapped to a {@link TrackedReference} or to an array of them.
+     */
+    private static final class Bucket {
+
+        final String entityName;
+
+        /**
+         * Holders of the integer ids.
+         */
+        final IntMap ints = new IntMap();
+
+        /**
+         * Holders of the other ids. Null until required.
+         */
+        Map<Serializable, Object> others;
+
+        Bucket(String entityName) {
+            this.entityName = entityName;
+        }
+
+        Object get(Serializable id) {
+            if (id instanceof Integer) {
+                return this.ints.get(((Integer) id).intValue());
+            }
+            return this.others != null ? this.others.get(id) : null;
+        }
+
+        void put(Serializable id, Object holder) {
+            if (id instanceof Integer) {
+                this.ints.put(((Integer) id).intValue(), holder);
+            } else {
+                if (this.others == null) {
+                    this.others = new HashMap<Serializable, Object>();
+                }
+                this.others.put(id, holder);
+            }
+        }
+
+        Object remove(Serializable id) {
+            if (id instanceof Integer) {
+                return this.ints.remove(((Integer) id).intValue());
+            }
+            return this.others != null ? this.others.remove(id) : null;
+        }
+
+        int size() {
+            return this.ints.size() + (this.others != null ? this.others.size() : 0);
+        }
+
+    }
+
+    /**
+     * A part of the tracker guarded by its own lock. Each entity id is always tracked by the same stripe.
+     */
+    private static final class Stripe {
+
+        /**
+         * The buckets by entity name.
+         */
+        private final Map<String, Bucket> buckets = new HashMap<String, Bucket>();
+
+        /**
+         * Queue receiving the references cleared by the garbage collector.
+         */
+        private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+        /**
+         * Number of references held.
+         */
+        private int referenceCount;
+
+        /**
+         * Number of references removed once cleared by the garbage collector.
+         */
+        private long purgedCount;
+
+        /**
+         * Return the references of the given holder.
+         */
+        private static TrackedReference[] references(Object holder) {
+            if (holder == null) {
+                return new TrackedReference[0];
+            }
+            if (holder instanceof TrackedReference) {
+                return new TrackedReference[] { (TrackedReference) holder };
+            }
+            return (TrackedReference[]) holder;
+        }
+
+        /**
+         * This function is used to find an entity corresponding to the given parameters.
+         * 
+         * @param entityName
+         *            the entity name (the entity class name)
+         * @param id
+         *            the entity id
+         * @return the entity object or null if the entity is not found.
+         */
+        synchronized Collection<?> find(String entityName, Serializable id) {
+            purge();
+            Bucket bucket = this.buckets.get(entityName);
+            if (bucket == null) {
+                return Collections.EMPTY_LIST;
+            }
+            Object holder = bucket.get(id);
+            if (holder == null) {
+                return Collections.EMPTY_LIST;
+            }
+            if (holder instanceof TrackedReference) {
+                Object entity = ((TrackedReference) holder).get();
+                return entity != null ? Collections.singletonList(entity) : Collections.EMPTY_LIST;
+            }
+            TrackedReference[] refs = (TrackedReference[]) holder;
+            List<Object> list = new ArrayList<Object>(refs.length);
+            for (TrackedReference ref : refs) {
+                Object entity = ref.get();
+                if (entity != null) {
+                    list.add(entity);
+                }
+            }
+            return list;
+        }
+
+        /**
+         * Remove the references cleared by the garbage collector and the ids without instances.
+         */
+        private void purge() {
+            TrackedReference ref;
+            while ((ref = (TrackedReference) this.queue.poll()) != null) {
+                Bucket bucket = ref.bucket;
+                TrackedReference[] refs = references(bucket.get(ref.id));
+                int index = 0;
+                while (index < refs.length && refs[index] != ref) {
+                    index++;
+                }
+                if (index == refs.length) {
+                    // Already unregistered
+                    continue;
+                }
+                if (refs.length == 1) {
+                    bucket.remove(ref.id);
+                    if (bucket.size() == 0 && this.buckets.get(bucket.entityName) == bucket) {
+                        this.buckets.remove(bucket.entityName);
+                    }
+                } else if (refs.length == 2) {
+                    bucket.put(ref.id, refs[1 - index]);
+                } else {
+                    TrackedReference[] newRefs = new TrackedReference[refs.length - 1];
+                    System.arraycopy(refs, 0, newRefs, 0, index);
+                    System.arraycopy(refs, index + 1, newRefs, index, refs.length - index - 1);
+                    bucket.put(ref.id, newRefs);
+                }
+                this.referenceCount--;
+                this.purgedCount++;
+            }
+        }
+
+        /**
+         * This function is used to add a new entity object to this tracker.
+         * 
+         * @param entityName
+         *            the entity name (the entity class name)
+         * @param id
+         *            the entity id
+         * @param entity
+         *            the entity object
+         */
+        synchronized void register(String entityName, Serializable id, Object entity) {
+            purge();
+            Bucket bucket = this.buckets.get(entityName);
+            if (bucket == null) {
+                bucket = new Bucket(entityName);
+                this.buckets.put(entityName, bucket);
+            }
+            Object holder = bucket.get(id);
+            if (holder == null) {
+                bucket.put(id, new TrackedReference(entity, this.queue, bucket, id));
+            } else {
+                TrackedReference[] refs = references(holder);
+                for (TrackedReference r : refs) {
+                    if (r.get() == entity) {
+                        return;
+                    }
+                }
+                TrackedReference[] newRefs = new TrackedReference[refs.length + 1];
+                System.arraycopy(refs, 0, newRefs, 0, refs.length);
+                newRefs[refs.length] = new TrackedReference(entity, this.queue, bucket, id);
+                bucket.put(id, newRefs);
+            }
+            this.referenceCount++;
+        }
+
+        /**
+         * This function is used to unregister an entity object. This function may be called when the object it removed from
+         * the persistent layer.
+         * 
+         * @param entityName
+         *            the entity class name
+         * @param id
+         *            the entity id
+         */
+        synchronized void unregister(String entityName, Serializable id) {
+            purge();
+            Bucket bucket = this.buckets.get(entityName);
+            if (bucket == null) {
+                return;
+            }
+            // Remove weak reference.
+            TrackedReference[] refs = references(bucket.remove(id));
+            for (TrackedReference ref : refs) {
+                ref.clear();
+            }
+            this.referenceCount -= refs.length;
+            // Check if the map may be remove.
+            if (bucket.size() == 0) {
+                this.buckets.remove(entityName);
+            }
+        }
+
+        /**
+         * Return the number of instances tracked, including the instances freed by the garbage collector not yet purged.
+         * 
+         * @return number of weak references held.
+         */
+        synchronized int size() {
+            purge();
+            return this.referenceCount;
+        }
+
+        /**
+         * Return the number of distinct entity ids tracked.
+         * 
+         * @return number of ids.
+         */
+        synchronized int getIdCount() {
+            purge();
+            int count = 0;
+            for (Bucket bucket : this.buckets.values()) {
+                count += bucket.size();
+            }
+            return count;
+        }
+
+        /**
+         * Return the number of instances removed from this tracker once freed by the garbage collector.
+         * 
+         * @return number of purged references.
+         */
+        synchronized long getPurgedCount() {
+            return this.purgedCount;
+        }
+
+    }
+
+    /**
+     * Number of stripes. Must be a power of two.
+     */
+    private static final int STRIPES = 16;
+
+    /**
+     * The stripes.
+     */
+    private final Stripe[] stripes;
+
+    /**
+     * Create a new tracker.
+     */
+    public ObjectIdentityTracker() {
+        this.stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Return the stripe tracking the given id.
+     */
+    private Stripe stripe(String entityName, Serializable id) {
+        int h = entityName.hashCode() * 31 + (id != null ? id.hashCode() : 0);
+        h *= 0x9E3779B9;
+        return this.stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
     }
 
     /**
@@ -58,23 +454,7 @@ public class ObjectIdentityTracker {
      * @return the entity object or null if the entity is not found.
      */
     public Collection<?> find(String entityName, Serializable id) {
-        purge();
-        if (this.cache == null) {
-            return Collections.EMPTY_LIST;
-        }
-        Map<Serializable, ReferenceIdentityMap> map = this.cache.get(entityName);
-        if (map == null) {
-            return Collections.EMPTY_LIST;
-        }
-        ReferenceIdentityMap weakMap = map.get(id);
-        if (weakMap == null) {
-            return Collections.EMPTY_LIST;
-        }
-        return weakMap.keySet();
-    }
-
-    private void purge() {
-
+        return stripe(entityName, id).find(entityName, id);
     }
 
     /**
@@ -88,24 +468,9 @@ public class ObjectIdentityTracker {
      *            the entity object
      */
     public void register(String entityName, Serializable id, Object entity) {
-        if (this.cache == null) {
-            this.cache = new HashMap<String, Map<Serializable, ReferenceIdentityMap>>();
-        }
-        Map<Serializable, ReferenceIdentityMap> map = this.cache.get(entityName);
-        if (map == null) {
-            map = new HashMap<Serializable, ReferenceIdentityMap>();
-            this.cache.put(entityName, map);
-        }
-        ReferenceIdentityMap weakMap = map.get(id);
-        if (weakMap == null) {
-            weakMap = createReferenceMap();
-            map.put(id, weakMap);
-        }
-        weakMap.put(entity, EXISTS);
+        stripe(entityName, id).register(entityName, id, entity);
     }
 
-    private Object EXISTS = new Object();
-
     /**
      * This function is used to unregister an entity object. This function may be called when the object it removed from
      * the persistent layer.
@@ -116,19 +481,46 @@ public class ObjectIdentityTracker {
      *            the entity id
      */
     public void unregister(String entityName, Serializable id) {
-        if (this.cache == null) {
-            return;
+        stripe(entityName, id).unregister(entityName, id);
+    }
+
+    /**
+     * Return the number of instances tracked, including the instances freed by the garbage collector not yet purged.
+     * 
+     * @return number of weak references held.
+     */
+    public int size() {
+        int count = 0;
+        for (Stripe stripe : this.stripes) {
+            count += stripe.size();
         }
-        Map<Serializable, ReferenceIdentityMap> map = this.cache.get(entityName);
-        if (map == null) {
-            return;
+        return count;
+    }
+
+    /**
+     * Return the number of distinct entity ids tracked.
+     * 
+     * @return number of ids.
+     */
+    public int getIdCount() {
+        int count = 0;
+        for (Stripe stripe : this.stripes) {
+            count += stripe.getIdCount();
         }
-        // Remove weak reference.
-        map.remove(id);
-        // Check if the map may be remove.
-        if (map.size() == 0) {
-            this.cache.remove(entityName);
+        return count;
+    }
+
+    /**
+     * Return the number of instances removed from this tracker once freed by the garbage collector.
+     * 
+     * @return number of purged references.
+     */
+    public long getPurgedCount() {
+        long count = 0;
+        for (Stripe stripe : this.stripes) {
+            count += stripe.getPurgedCount();
         }
+        return count;
     }
 
-}
\ No newline at end of file
+}
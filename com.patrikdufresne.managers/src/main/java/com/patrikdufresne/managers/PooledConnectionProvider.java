@@ -0,0 +1,791 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.managers;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.hibernate.HibernateException;
+import org.hibernate.cfg.Environment;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.UnknownUnwrapTypeException;
+import org.hibernate.service.jdbc.connections.internal.ConnectionProviderInitiator;
+import org.hibernate.service.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.service.spi.Configurable;
+import org.hibernate.service.spi.Stoppable;
+
+/**
+ * This implementation of {@link ConnectionProvider} keep a pool of JDBC connections. It's the default provider used by
+ * {@link H2DBConfigurations}.
+ * <p>
+ * The pool is bounded by a minimum and a maximum size. Connections idle for too long are closed by a background timer
+ * (down to the minimum size), connections are validated before being handed out and every connection keep a small
+ * cache of prepared statements.
+ * <p>
+ * The pool statistics (active and idle connections, borrow wait time) may be retrieved using
+ * {@link Managers#getConnectionPool()} to size the pool.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+public class PooledConnectionProvider implements ConnectionProvider, Configurable, Stoppable {
+
+    /**
+     * Property key to define the minimum number of connections kept open by the pool. Default to 1 to keep in memory
+     * database alive.
+     */
+    public static final String MIN_SIZE = "managers.pool.min_size"; //$NON-NLS-1$
+
+    /**
+     * Property key to define the maximum number of open connections. Default to {@link Environment#POOL_SIZE} or 20.
+     */
+    public static final String MAX_SIZE = "managers.pool.max_size"; //$NON-NLS-1$
+
+    /**
+     * Property key to define the time (in milliseconds) after which an idle connection is closed.
+     */
+    public static final String IDLE_TIMEOUT = "managers.pool.idle_timeout"; //$NON-NLS-1$
+
+    /**
+     * Property key to define the maximum time (in milliseconds) to wait for a connection when the pool is exhausted.
+     */
+    public static final String BORROW_TIMEOUT = "managers.pool.borrow_timeout"; //$NON-NLS-1$
+
+    /**
+     * Property key to enable or disable the validation of connection before being borrowed.
+     */
+    public static final String VALIDATE = "managers.pool.validate"; //$NON-NLS-1$
+
+    /**
+     * Property key to define the number of prepared statements cached per connection. Zero to disable the cache.
+     */
+    public static final String STATEMENT_CACHE_SIZE = "managers.pool.statement_cache_size"; //$NON-NLS-1$
+
+    /**
+     * Timeout in seconds used to validate a connection.
+     */
+    private static final int VALIDATION_TIMEOUT = 5;
+
+    /**
+     * Name of the method intercepted by the proxies.
+     */
+    private static final String CLOSE = "close"; //$NON-NLS-1$
+
+    private static final String PREPARE_STATEMENT = "prepareStatement"; //$NON-NLS-1$
+
+    private static final String GET_STATEMENT = "getStatement"; //$NON-NLS-1$
+
+    private static final String IS_CLOSED = "isClosed"; //$NON-NLS-1$
+
+    /**
+     * Wraps a physical connection. This class is the invocation handler of the connection proxy returned to Hibernate
+     * to intercept the calls to <code>prepareStatement</code>. A new proxy is created on every borrow so the proxy
+     * of a previous borrower can't be used once the connection is returned to the pool.
+     */
+    private class PooledConnection implements InvocationHandler {
+
+        /**
+         * The physical connection.
+         */
+        final Connection connection;
+
+        /**
+         * The proxy returned to the current borrower or null if the connection is idle.
+         */
+        volatile Connection proxy;
+
+        /**
+         * Last time this connection was returned to the pool.
+         */
+        long lastUsed;
+
+        /**
+         * Statement cache (access ordered).
+         */
+        private LinkedHashMap<String, CachedStatement> statements;
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+            if (PooledConnectionProvider.this.statementCacheSize > 0) {
+                this.statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(Entry<String, CachedStatement> eldest) {
+                        if (size() > PooledConnectionProvider.this.statementCacheSize) {
+                            eldest.getValue().evicted = true;
+                            if (!eldest.getValue().inUse) {
+                                closeQuietly(eldest.getValue().statement);
+                            }
+                            return true;
+                        }
+                        return false;
+                    }
+                };
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (CLOSE.equals(method.getName()) && args == null) {
+                closeConnection((Connection) proxy);
+                return null;
+            }
+            if (proxy != this.proxy) {
+                // Connection returned to the pool by this borrower.
+                if (IS_CLOSED.equals(method.getName()) && args == null) {
+                    return Boolean.TRUE;
+                }
+                throw new SQLException("connection is closed"); //$NON-NLS-1$
+            }
+            if (this.statements != null && PREPARE_STATEMENT.equals(method.getName()) && isCacheable(args)) {
+                return prepareStatement(args);
+            }
+            try {
+                return method.invoke(this.connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        /**
+         * Only <code>prepareStatement(String)</code> and <code>prepareStatement(String, int)</code> are cached.
+         */
+        private boolean isCacheable(Object[] args) {
+            return args != null && (args.length == 1 || (args.length == 2 && args[1] instanceof Integer));
+        }
+
+        /**
+         * Return a statement from the cache or create a new one.
+         */
+        private PreparedStatement prepareStatement(Object[] args) throws SQLException {
+            String sql = (String) args[0];
+            String key = args.length == 1 ? sql : args[1] + ":" + sql; //$NON-NLS-1$
+            CachedStatement cached = this.statements.get(key);
+            if (cached != null && !cached.inUse) {
+                PooledConnectionProvider.this.stats.statementHit();
+                cached.inUse = true;
+                return cached.proxy;
+            }
+            PooledConnectionProvider.this.stats.statementMiss();
+            PreparedStatement statement;
+            if (args.length == 1) {
+                statement = this.connection.prepareStatement(sql);
+            } else {
+                statement = this.connection.prepareStatement(sql, ((Integer) args[1]).intValue());
+            }
+            if (cached != null) {
+                // Same statement prepared twice on the same connection, don't cache the second one.
+                return statement;
+            }
+            cached = new CachedStatement(statement);
+            cached.inUse = true;
+            this.statements.put(key, cached);
+            return cached.proxy;
+        }
+
+        /**
+         * Create the proxy handed to a new borrower.
+         */
+        Connection borrow() {
+            return this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, this);
+        }
+
+        /**
+         * Roll back the pending transaction and clear the read-only flag set by a read-only transaction before
+         * returning the connection to the pool.
+         *
+         * @return false if the connection is broken.
+         */
+        boolean reset() {
+            try {
+                if (this.connection.isClosed()) {
+                    return false;
+                }
+                if (!this.connection.getAutoCommit()) {
+                    this.connection.rollback();
+                }
+                if (this.connection.isReadOnly()) {
+                    this.connection.setReadOnly(false);
+                }
+                return true;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Check if the physical connection is still usable.
+         */
+        boolean isValid() {
+            try {
+                return !this.connection.isClosed() && this.connection.isValid(VALIDATION_TIMEOUT);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Close the physical connection and the cached statements.
+         */
+        void close() {
+            if (this.statements != null) {
+                for (CachedStatement cached : this.statements.values()) {
+                    closeQuietly(cached.statement);
+                }
+                this.statements.clear();
+            }
+            try {
+                this.connection.close();
+            } catch (SQLException e) {
+                // Swallow
+            }
+        }
+
+    }
+
+    /**
+     * Wraps a cached prepared statement. The <code>close()</code> call is intercepted to return the statement to the
+     * cache.
+     */
+    private static class CachedStatement implements InvocationHandler {
+
+        final PreparedStatement statement;
+
+        final PreparedStatement proxy;
+
+        boolean inUse;
+
+        boolean evicted;
+
+        /**
+         * True if the statement settings was changed and need to be restored.
+         */
+        private boolean dirty;
+
+        private final int fetchSize;
+
+        CachedStatement(PreparedStatement statement) throws SQLException {
+            this.statement = statement;
+            this.fetchSize = statement.getFetchSize();
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[] { PreparedStatement.class }, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (CLOSE.equals(name) && args == null) {
+                release();
+                return null;
+            }
+            if (name.equals("setMaxRows") || name.equals("setQueryTimeout") || name.equals("setFetchSize")) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                this.dirty = true;
+            }
+            Object result;
+            try {
+                result = method.invoke(this.statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof ResultSet) {
+                // Hibernate lookup the statement of the result set.
+                result = Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class }, new StatementResultSet(
+                        (ResultSet) result,
+                        this.proxy));
+            }
+            return result;
+        }
+
+        /**
+         * Reset the statement state and return it to the cache.
+         */
+        private void release() throws SQLException {
+            if (!this.inUse) {
+                return;
+            }
+            this.inUse = false;
+            if (this.evicted) {
+                this.statement.close();
+                return;
+            }
+            try {
+                this.statement.clearParameters();
+                this.statement.clearBatch();
+                this.statement.clearWarnings();
+                if (this.dirty) {
+                    this.statement.setMaxRows(0);
+                    this.statement.setQueryTimeout(0);
+                    this.statement.setFetchSize(this.fetchSize);
+                    this.dirty = false;
+                }
+            } catch (SQLException e) {
+                // Can't be reused
+                this.evicted = true;
+                this.statement.close();
+            }
+        }
+
+    }
+
+    /**
+     * Wraps a result set created by a cached statement to return the statement proxy instead of the physical
+     * statement.
+     */
+    private static class StatementResultSet implements InvocationHandler {
+
+        private final ResultSet resultSet;
+
+        private final PreparedStatement statement;
+
+        StatementResultSet(ResultSet resultSet, PreparedStatement statement) {
+            this.resultSet = resultSet;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (GET_STATEMENT.equals(method.getName()) && args == null) {
+                return this.statement;
+            }
+            try {
+                return method.invoke(this.resultSet, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+    }
+
+    /**
+     * Pool statistics.
+     */
+    private static class Statistics {
+
+        long borrowCount;
+
+        long borrowWaitTime;
+
+        long maxBorrowWaitTime;
+
+        long statementHits;
+
+        long statementMisses;
+
+        synchronized void borrowed(long waitNanos) {
+            this.borrowCount++;
+            this.borrowWaitTime += waitNanos;
+            if (waitNanos > this.maxBorrowWaitTime) {
+                this.maxBorrowWaitTime = waitNanos;
+            }
+        }
+
+        synchronized void statementHit() {
+            this.statementHits++;
+        }
+
+        synchronized void statementMiss() {
+            this.statementMisses++;
+        }
+
+    }
+
+    /**
+     * Close a statement without throwing exception.
+     */
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // Swallow
+        }
+    }
+
+    /**
+     * Number of connections currently borrowed.
+     */
+    private int active;
+
+    private int borrowTimeout;
+
+    private Properties connectionProps;
+
+    private Driver driver;
+
+    /**
+     * Timer used to evict the idle connections.
+     */
+    private Timer evictor;
+
+    /**
+     * Idle connections, the most recently used first.
+     */
+    private LinkedList<PooledConnection> idle = new LinkedList<PooledConnection>();
+
+    private int idleTimeout;
+
+    private Integer isolation;
+
+    private int maxSize;
+
+    private int minSize;
+
+    private int statementCacheSize;
+
+    private final Statistics stats = new Statistics();
+
+    private boolean stopped;
+
+    /**
+     * Number of physical connections (idle, active or being opened).
+     */
+    private int total;
+
+    private String url;
+
+    private boolean validate;
+
+    /**
+     * This implementation borrow a connection from the pool. If the pool is empty, a new connection is open or, if the
+     * pool reach it's maximum size, wait for a connection to be returned.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        while (true) {
+            PooledConnection conn = null;
+            synchronized (this) {
+                long deadline = start + this.borrowTimeout * 1000000L;
+                while (conn == null) {
+                    if (this.stopped) {
+                        throw new SQLException("connection pool is stopped"); //$NON-NLS-1$
+                    }
+                    if (!this.idle.isEmpty()) {
+                        conn = this.idle.removeFirst();
+                    } else if (this.total < this.maxSize) {
+                        // Open a new connection outside the lock.
+                        this.total++;
+                        break;
+                    } else {
+                        long remaining = (deadline - System.nanoTime()) / 1000000L;
+                        if (remaining <= 0) {
+                            throw new SQLException("timeout waiting for a connection, pool size: " + this.maxSize); //$NON-NLS-1$
+                        }
+                        try {
+                            wait(remaining);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new SQLException("interrupted while waiting for a connection", e); //$NON-NLS-1$
+                        }
+                    }
+                }
+            }
+            if (conn == null) {
+                try {
+                    conn = open();
+                } catch (SQLException e) {
+                    discard(null);
+                    throw e;
+                }
+            } else if (this.validate && !conn.isValid()) {
+                // Connection is broken, open another one.
+                discard(conn);
+                continue;
+            }
+            Connection proxy;
+            synchronized (this) {
+                this.active++;
+                proxy = conn.borrow();
+            }
+            this.stats.borrowed(System.nanoTime() - start);
+            return proxy;
+        }
+    }
+
+    /**
+     * This implementation return the connection to the pool.
+     */
+    @Override
+    public void closeConnection(Connection conn) throws SQLException {
+        if (conn == null || !Proxy.isProxyClass(conn.getClass()) || !(Proxy.getInvocationHandler(conn) instanceof PooledConnection)) {
+            throw new IllegalArgumentException("connection not provided by this pool"); //$NON-NLS-1$
+        }
+        PooledConnection pooled = (PooledConnection) Proxy.getInvocationHandler(conn);
+        synchronized (this) {
+            if (pooled.proxy != conn) {
+                // Already returned
+                return;
+            }
+            pooled.proxy = null;
+            this.active--;
+        }
+        boolean reuse = pooled.reset();
+        synchronized (this) {
+            if (reuse && !this.stopped) {
+                pooled.lastUsed = System.currentTimeMillis();
+                this.idle.addFirst(pooled);
+                notify();
+                return;
+            }
+        }
+        discard(pooled);
+    }
+
+    /**
+     * Read the pool configuration.
+     */
+    @Override
+    public void configure(Map configurationValues) {
+        String driverClassName = (String) configurationValues.get(Environment.DRIVER);
+        if (driverClassName != null) {
+            try {
+                this.driver = (Driver) Class.forName(driverClassName).newInstance();
+            } catch (Exception e) {
+                throw new HibernateException("Specified JDBC Driver " + driverClassName + " could not be loaded", e); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+        }
+        this.url = (String) configurationValues.get(Environment.URL);
+        if (this.url == null) {
+            throw new HibernateException("JDBC URL was not specified by property " + Environment.URL); //$NON-NLS-1$
+        }
+        this.connectionProps = ConnectionProviderInitiator.getConnectionProperties(configurationValues);
+        this.isolation = ConfigurationHelper.getInteger(Environment.ISOLATION, configurationValues);
+
+        this.maxSize = ConfigurationHelper.getInt(MAX_SIZE, configurationValues, ConfigurationHelper.getInt(Environment.POOL_SIZE, configurationValues, 20));
+        this.minSize = Math.min(ConfigurationHelper.getInt(MIN_SIZE, configurationValues, 1), this.maxSize);
+        this.idleTimeout = ConfigurationHelper.getInt(IDLE_TIMEOUT, configurationValues, 300000);
+        this.borrowTimeout = ConfigurationHelper.getInt(BORROW_TIMEOUT, configurationValues, 30000);
+        this.validate = ConfigurationHelper.getBoolean(VALIDATE, configurationValues, true);
+        this.statementCacheSize = ConfigurationHelper.getInt(STATEMENT_CACHE_SIZE, configurationValues, 32);
+        if (this.maxSize < 1) {
+            throw new HibernateException(MAX_SIZE + " must be greater than zero"); //$NON-NLS-1$
+        }
+
+        // Schedule the idle connection eviction
+        if (this.idleTimeout > 0) {
+            long period = Math.max(1000, this.idleTimeout / 2);
+            this.evictor = new Timer("managers-pool-evictor", true); //$NON-NLS-1$
+            this.evictor.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    evictIdleConnections();
+                }
+            }, period, period);
+        }
+    }
+
+    /**
+     * Close a connection and release it's place in the pool.
+     *
+     * @param pooled
+     *            the connection to be closed or null if the connection failed to open.
+     */
+    private void discard(PooledConnection pooled) {
+        synchronized (this) {
+            this.total--;
+            notify();
+        }
+        if (pooled != null) {
+            pooled.close();
+        }
+    }
+
+    /**
+     * Close the connections idle for longer than the idle timeout, keeping at least the minimum number of connection
+     * open.
+     */
+    void evictIdleConnections() {
+        List<PooledConnection> evicted = new ArrayList<PooledConnection>();
+        synchronized (this) {
+            long limit = System.currentTimeMillis() - this.idleTimeout;
+            Iterator<PooledConnection> iter = this.idle.descendingIterator();
+            while (iter.hasNext() && this.total > this.minSize) {
+                PooledConnection conn = iter.next();
+                if (conn.lastUsed > limit) {
+                    break;
+                }
+                iter.remove();
+                this.total--;
+                evicted.add(conn);
+            }
+        }
+        for (PooledConnection conn : evicted) {
+            conn.close();
+        }
+    }
+
+    /**
+     * Returns the number of connections currently borrowed.
+     *
+     * @return number of active connections.
+     */
+    public synchronized int getActiveCount() {
+        return this.active;
+    }
+
+    /**
+     * Returns the average time spent by the callers waiting for a connection.
+     *
+     * @return the average wait time in milliseconds.
+     */
+    public double getAverageBorrowWaitTime() {
+        synchronized (this.stats) {
+            return this.stats.borrowCount == 0 ? 0 : this.stats.borrowWaitTime / (double) this.stats.borrowCount / 1000000d;
+        }
+    }
+
+    /**
+     * Returns the number of connections borrowed since the pool creation.
+     *
+     * @return the number of borrow.
+     */
+    public long getBorrowCount() {
+        synchronized (this.stats) {
+            return this.stats.borrowCount;
+        }
+    }
+
+    /**
+     * Returns the number of open connections waiting to be borrowed.
+     *
+     * @return number of idle connections.
+     */
+    public synchronized int getIdleCount() {
+        return this.idle.size();
+    }
+
+    /**
+     * Returns the maximum number of connections.
+     *
+     * @return the pool maximum size.
+     */
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * Returns the longest time spent by a caller waiting for a connection.
+     *
+     * @return the maximum wait time in milliseconds.
+     */
+    public double getMaxBorrowWaitTime() {
+        synchronized (this.stats) {
+            return this.stats.maxBorrowWaitTime / 1000000d;
+        }
+    }
+
+    /**
+     * Returns the number of prepared statement served from the cache.
+     *
+     * @return number of cache hits.
+     */
+    public long getStatementCacheHitCount() {
+        synchronized (this.stats) {
+            return this.stats.statementHits;
+        }
+    }
+
+    /**
+     * Returns the number of prepared statement created because they were not found in the cache.
+     *
+     * @return number of cache misses.
+     */
+    public long getStatementCacheMissCount() {
+        synchronized (this.stats) {
+            return this.stats.statementMisses;
+        }
+    }
+
+    @Override
+    public boolean isUnwrappableAs(Class unwrapType) {
+        return ConnectionProvider.class.equals(unwrapType) || PooledConnectionProvider.class.isAssignableFrom(unwrapType);
+    }
+
+    /**
+     * Open a new physical connection.
+     */
+    private PooledConnection open() throws SQLException {
+        Connection conn;
+        if (this.driver != null) {
+            conn = this.driver.connect(this.url, this.connectionProps);
+        } else {
+            conn = DriverManager.getConnection(this.url, this.connectionProps);
+        }
+        if (this.isolation != null) {
+            conn.setTransactionIsolation(this.isolation.intValue());
+        }
+        if (conn.getAutoCommit()) {
+            conn.setAutoCommit(false);
+        }
+        return new PooledConnection(conn);
+    }
+
+    /**
+     * Close every connection of the pool.
+     */
+    @Override
+    public void stop() {
+        List<PooledConnection> list;
+        synchronized (this) {
+            this.stopped = true;
+            list = new ArrayList<PooledConnection>(this.idle);
+            this.total -= this.idle.size();
+            this.idle.clear();
+            notifyAll();
+        }
+        if (this.evictor != null) {
+            this.evictor.cancel();
+        }
+        for (PooledConnection conn : list) {
+            conn.close();
+        }
+    }
+
+    /**
+     * Connections are kept for the whole transaction.
+     */
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (isUnwrappableAs(unwrapType)) {
+            return (T) this;
+        }
+        throw new UnknownUnwrapTypeException(unwrapType);
+    }
+
+}
@@ -0,0 +1,345 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.managers;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.Configurable;
+import org.hibernate.id.PersistentIdentifierGenerator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.jdbc.AbstractReturningWork;
+import org.hibernate.mapping.Table;
+import org.hibernate.type.Type;
+
+/**
+ * Identifier generator handing out ids from ranges reserved in the database. Each table get its own sequence
+ * incremented by the allocation size. Every call to <code>NEXT VALUE</code> reserve a range of
+ * <code>allocation_size</code> ids that are then assigned in memory without any round trip.
+ * <p>
+ * Since the ranges are reserved atomically by the database sequence, many JVM may share the same database (e.g.:
+ * AUTO_SERVER mode) without id collision. Unused ids of a range are lost when the managers is disposed.
+ * <p>
+ * The sequence is created when required, starting after the greatest id of the table. This let existing databases
+ * created with identity columns switch to this generator without migration. For the same reason, the sequence is
+ * never created by the schema export or update. The SQL is generated by the dialect, but the increment of an existing
+ * sequence may only be read from H2, other databases are expected to use the configured allocation size.
+ * <p>
+ * The allocation size may be define using the <code>allocation_size</code> parameter or using the
+ * <code>managers.id.allocation_size</code> system property.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+public class PooledIdentifierGenerator implements PersistentIdentifierGenerator, Configurable {
+
+    /**
+     * Parameter used to define the allocation size.
+     */
+    public static final String ALLOCATION_SIZE = "allocation_size"; //$NON-NLS-1$
+
+    /**
+     * System property used to define the default allocation size.
+     */
+    public static final String ALLOCATION_SIZE_PROPERTY = "managers.id.allocation_size"; //$NON-NLS-1$
+
+    /**
+     * Default allocation size.
+     */
+    public static final int DEFAULT_ALLOCATION_SIZE = 50;
+
+    /**
+     * Parameter used to define the sequence name. Default to the table name suffixed with <code>_SEQ</code>.
+     */
+    public static final String SEQUENCE_NAME = "sequence_name"; //$NON-NLS-1$
+
+    /**
+     * Suffix added to the table name to create the sequence name.
+     */
+    private static final String SEQUENCE_SUFFIX = "_SEQ"; //$NON-NLS-1$
+
+    /**
+     * The allocation size used to create the sequence.
+     */
+    private int allocationSize;
+
+    /**
+     * The real increment of the sequence (may differ from the allocation size when the sequence was created by
+     * another configuration). Zero until the sequence is initialized.
+     */
+    private int increment;
+
+    /**
+     * The next id to be returned.
+     */
+    private long next;
+
+    /**
+     * The upper limit (exclusive) of the current range.
+     */
+    private long hi;
+
+    /**
+     * The qualified table name.
+     */
+    private String table;
+
+    /**
+     * The identifier column name.
+     */
+    private String column;
+
+    /**
+     * The schema name (may be null).
+     */
+    private String schema;
+
+    /**
+     * The sequence name (not qualified).
+     */
+    private String sequenceName;
+
+    /**
+     * The qualified sequence name.
+     */
+    private String qualifiedSequenceName;
+
+    /**
+     * The dialect used to generate the sequence SQL.
+     */
+    private Dialect dialect;
+
+    /**
+     * The identifier type returned by the generator.
+     */
+    private Class<?> returnedClass;
+
+    /**
+     * The number of range reserved by this generator.
+     */
+    private int reservationCount;
+
+    @Override
+    public void configure(Type type, Properties params, Dialect dialect) throws MappingException {
+        if (!dialect.supportsSequences()) {
+            throw new MappingException("dialect does not support sequences: " + dialect); //$NON-NLS-1$
+        }
+        this.dialect = dialect;
+        this.returnedClass = type.getReturnedClass();
+        if (!Integer.class.equals(this.returnedClass) && !Long.class.equals(this.returnedClass)) {
+            throw new MappingException("identifier type not supported: " + this.returnedClass); //$NON-NLS-1$
+        }
+        this.allocationSize = ConfigurationHelper.getInt(ALLOCATION_SIZE, params, Integer
+                .getInteger(ALLOCATION_SIZE_PROPERTY, DEFAULT_ALLOCATION_SIZE)
+                .intValue());
+        if (this.allocationSize < 1) {
+            throw new MappingException("allocation size should be greater than zero"); //$NON-NLS-1$
+        }
+        String catalog = params.getProperty(CATALOG);
+        this.schema = params.getProperty(SCHEMA);
+        String tableName = params.getProperty(TABLE);
+        this.table = Table.qualify(catalog, this.schema, tableName);
+        this.column = params.getProperty(PK);
+        this.sequenceName = ConfigurationHelper.getString(SEQUENCE_NAME, params, unquote(tableName) + SEQUENCE_SUFFIX);
+        this.qualifiedSequenceName = Table.qualify(catalog, this.schema, this.sequenceName);
+    }
+
+    /**
+     * Remove the quotes around the given name.
+     */
+    private static String unquote(String name) {
+        if (name.length() > 1 && (name.charAt(0) == '"' || name.charAt(0) == '`')) {
+            return name.substring(1, name.length() - 1);
+        }
+        return name;
+    }
+
+    @Override
+    public synchronized Serializable generate(SessionImplementor session, Object object) throws HibernateException {
+        if (this.next >= this.hi) {
+            reserve(session);
+        }
+        long value = this.next++;
+        if (Integer.class.equals(this.returnedClass)) {
+            return Integer.valueOf((int) value);
+        }
+        return Long.valueOf(value);
+    }
+
+    /**
+     * Reserve a new range of ids. The work is done using an isolated connection to avoid the sequence creation
+     * committing the current transaction.
+     */
+    private void reserve(SessionImplementor session) {
+        final long start;
+        if (this.increment == 0) {
+            // Read the greatest id within the current transaction to see its uncommitted rows.
+            try {
+                start = readMaxId(session.connection()) + 1;
+            } catch (SQLException e) {
+                throw new HibernateException("fail to read the greatest id of " + this.table, e); //$NON-NLS-1$
+            }
+        } else {
+            start = 0;
+        }
+        long value = session.getTransactionCoordinator().getTransaction().createIsolationDelegate().delegateWork(new AbstractReturningWork<Long>() {
+            @Override
+            public Long execute(Connection connection) throws SQLException {
+                if (PooledIdentifierGenerator.this.increment == 0) {
+                    initSequence(connection, start);
+                }
+                PreparedStatement stmt = connection.prepareStatement(PooledIdentifierGenerator.this.dialect
+                        .getSequenceNextValString(PooledIdentifierGenerator.this.qualifiedSequenceName));
+                try {
+                    ResultSet rs = stmt.executeQuery();
+                    rs.next();
+                    return Long.valueOf(rs.getLong(1));
+                } finally {
+                    stmt.close();
+                }
+            }
+        },
+                true).longValue();
+        this.next = value;
+        this.hi = value + this.increment;
+        this.reservationCount++;
+    }
+
+    /**
+     * Return the greatest id of the table or zero if the table is empty.
+     */
+    private long readMaxId(Connection connection) throws SQLException {
+        Statement stmt = connection.createStatement();
+        try {
+            ResultSet rs = stmt.executeQuery("SELECT MAX(" + this.column + ") FROM " + this.table); //$NON-NLS-1$ //$NON-NLS-2$
+            rs.next();
+            return rs.getLong(1);
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * Check if the sequence exists using the dialect query.
+     */
+    private boolean sequenceExists(Connection connection) throws SQLException {
+        String sql = this.dialect.getQuerySequencesString();
+        if (sql == null) {
+            return false;
+        }
+        String name = unquote(this.sequenceName);
+        Statement stmt = connection.createStatement();
+        try {
+            ResultSet rs = stmt.executeQuery(sql);
+            while (rs.next()) {
+                if (name.equalsIgnoreCase(rs.getString(1))) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * Create the sequence if it doesn't exists and read its increment.
+     *
+     * @param start
+     *            the first value of the sequence if created.
+     */
+    private void initSequence(Connection connection, long start) throws SQLException {
+        if (!sequenceExists(connection)) {
+            Statement stmt = connection.createStatement();
+            try {
+                for (String sql : this.dialect.getCreateSequenceStrings(this.qualifiedSequenceName, (int) start, this.allocationSize)) {
+                    stmt.executeUpdate(sql);
+                }
+            } catch (SQLException e) {
+                // Created concurrently by another managers.
+                if (!sequenceExists(connection)) {
+                    throw e;
+                }
+            } finally {
+                stmt.close();
+            }
+        }
+        if (!(this.dialect instanceof H2Dialect)) {
+            this.increment = this.allocationSize;
+            return;
+        }
+        // The sequence may have been created by another configuration.
+        PreparedStatement pstmt = connection.prepareStatement("SELECT INCREMENT FROM INFORMATION_SCHEMA.SEQUENCES " //$NON-NLS-1$
+                + "WHERE SEQUENCE_SCHEMA = COALESCE(?, SCHEMA()) AND SEQUENCE_NAME = ?"); //$NON-NLS-1$
+        try {
+            pstmt.setString(1, this.schema != null ? unquote(this.schema).toUpperCase() : null);
+            pstmt.setString(2, this.sequenceName.toUpperCase());
+            ResultSet rs = pstmt.executeQuery();
+            this.increment = rs.next() ? rs.getInt(1) : this.allocationSize;
+            rs.close();
+        } finally {
+            pstmt.close();
+        }
+    }
+
+    /**
+     * Return the allocation size used to create the sequence.
+     *
+     * @return the allocation size.
+     */
+    public int getAllocationSize() {
+        return this.allocationSize;
+    }
+
+    /**
+     * Return the number of range reserved by this generator. Used for statistics.
+     *
+     * @return number of database round trip.
+     */
+    public synchronized int getReservationCount() {
+        return this.reservationCount;
+    }
+
+    /**
+     * This implementation doesn't create the sequence since the start value depends on the table content. The sequence
+     * is created on the first reservation.
+     */
+    @Override
+    public String[] sqlCreateStrings(Dialect dialect) throws HibernateException {
+        return new String[0];
+    }
+
+    @Override
+    public String[] sqlDropStrings(Dialect dialect) throws HibernateException {
+        return dialect.getDropSequenceStrings(this.qualifiedSequenceName);
+    }
+
+    @Override
+    public Object generatorKey() {
+        return this.qualifiedSequenceName;
+    }
+
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.managers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Check behavior of {@link EventManager}.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+public class EventManagerTest {
+
+    private EventManager eventManager;
+
+    @Before
+    public void createEventManager() {
+        this.eventManager = new EventManager();
+    }
+
+    private void send(int type, Class<?> clazz) {
+        ManagerEvent event = new ManagerEvent();
+        event.type = type;
+        event.clazz = clazz;
+        event.objects = new ArrayList<Object>();
+        this.eventManager.sendEvent(event);
+    }
+
+    @Test
+    public void testSendEvent_WithSuperClassListener_Notified() {
+        ManagerEventCounter counter = new ManagerEventCounter();
+        ManagerEventCounter other = new ManagerEventCounter();
+        this.eventManager.hook(ManagerEvent.ADD, ManagedObject.class, counter);
+        this.eventManager.hook(ManagerEvent.ALL, String.class, other);
+
+        send(ManagerEvent.ADD, MockEntity.class);
+        send(ManagerEvent.REMOVE, MockEntity.class);
+        assertEquals(1, counter.size());
+        assertEquals(0, other.size());
+    }
+
+    @Test
+    public void testSendEvent_WithProperties_NotifiedOnlyForProperties() {
+        ManagerEventCounter counter = new ManagerEventCounter();
+        this.eventManager.hook(ManagerEvent.ALL, MockEntity.class, new String[] { "archivedDate" }, counter);
+
+        ManagerEvent event = new ManagerEvent();
+        event.type = ManagerEvent.UPDATE;
+        event.clazz = MockEntity.class;
+        event.objects = new ArrayList<Object>();
+        event.properties = new String[] { "name" };
+        this.eventManager.sendEvent(event);
+        assertEquals(0, counter.size());
+
+        event.properties = new String[] { "name", "archivedDate" };
+        this.eventManager.sendEvent(event);
+        event.properties = null;
+        this.eventManager.sendEvent(event);
+        send(ManagerEvent.ADD, MockEntity.class);
+        assertEquals(3, counter.size());
+    }
+
+    @Test
+    public void testSendEvent_AfterHookAndUnhook_IndexUpdated() {
+        ManagerEventCounter counter1 = new ManagerEventCounter();
+        ManagerEventCounter counter2 = new ManagerEventCounter();
+        this.eventManager.hook(ManagerEvent.ALL, MockEntity.class, counter1);
+        send(ManagerEvent.ADD, MockEntity.class);
+
+        this.eventManager.hook(ManagerEvent.ALL, ArchivableObject.class, counter2);
+        send(ManagerEvent.ADD, MockEntity.class);
+        assertEquals(2, counter1.size());
+        assertEquals(1, counter2.size());
+
+        this.eventManager.unhook(ManagerEvent.ALL, MockEntity.class, counter1);
+        send(ManagerEvent.ADD, MockEntity.class);
+        assertEquals(2, counter1.size());
+        assertEquals(2, counter2.size());
+    }
+
+    @Test
+    public void testSendEvent_UnhookWhileDispatching_NotNotified() {
+        final ManagerEventCounter counter = new ManagerEventCounter();
+        this.eventManager.hook(ManagerEvent.ALL, MockEntity.class, new IManagerObserver() {
+            @Override
+            public void handleManagerEvent(ManagerEvent event) {
+                EventManagerTest.this.eventManager.unhook(ManagerEvent.ALL, MockEntity.class, counter);
+            }
+        });
+        this.eventManager.hook(ManagerEvent.ALL, MockEntity.class, counter);
+
+        send(ManagerEvent.ADD, MockEntity.class);
+        send(ManagerEvent.ADD, MockEntity.class);
+        assertEquals(0, counter.size());
+        assertEquals(1, this.eventManager.size());
+    }
+
+    /**
+     * Observer counting the event received.
+     */
+    private static class AtomicCounter implements IManagerObserver {
+
+        final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void handleManagerEvent(ManagerEvent event) {
+            this.count.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void testSendEvent_WithConcurrentHookAndUnhook_NoLostOrDuplicatedEvent() throws Exception {
+        final int threadCount = 8;
+        final int loop = 2000;
+        final List<AtomicCounter> permanents = new ArrayList<AtomicCounter>();
+        for (int i = 0; i < 4; i++) {
+            AtomicCounter counter = new AtomicCounter();
+            this.eventManager.hook(ManagerEvent.ALL, i % 2 == 0 ? MockEntity.class : ManagedObject.class, counter);
+            permanents.add(counter);
+        }
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < threadCount; t++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < loop; i++) {
+                            AtomicCounter observer = new AtomicCounter();
+                            EventManagerTest.this.eventManager.hook(ManagerEvent.ADD, MockEntity.class, observer);
+                            send(ManagerEvent.ADD, MockEntity.class);
+                            EventManagerTest.this.eventManager.unhook(ManagerEvent.ADD, MockEntity.class, observer);
+                            int received = observer.count.get();
+                            send(ManagerEvent.UPDATE, MockEntity.class);
+                            if (received < 1 || observer.count.get() != received) {
+                                throw new AssertionError("transient listener received " + observer.count.get() + " events");
+                            }
+                        }
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+        for (AtomicCounter counter : permanents) {
+            assertEquals(threadCount * loop * 2, counter.count.get());
+        }
+        assertEquals(permanents.size(), this.eventManager.size());
+    }
+
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.managers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Check behavior of {@link EventTable}.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+public class EventTableTest {
+
+    private EventTable table = new EventTable();
+
+    @Test
+    public void testAdd_AddThenUpdate_MergedAsAdd() {
+        Object entity = new Object();
+        this.table.add(ManagerEvent.ADD, entity);
+        this.table.add(ManagerEvent.UPDATE, entity);
+        assertEquals(1, this.table.size());
+        assertEquals(ManagerEvent.ADD, this.table.getType(0));
+        assertSame(entity, this.table.getEntity(0));
+    }
+
+    @Test
+    public void testAdd_AddThenRemove_Discarded() {
+        Object entity1 = new Object();
+        Object entity2 = new Object();
+        this.table.add(ManagerEvent.ADD, entity1);
+        this.table.add(ManagerEvent.UPDATE, entity2);
+        this.table.add(ManagerEvent.REMOVE, entity1);
+        assertEquals(1, this.table.size());
+        assertEquals(ManagerEvent.UPDATE, this.table.getType(0));
+        assertSame(entity2, this.table.getEntity(0));
+
+        // A new event for the entity is recorded again
+        this.table.add(ManagerEvent.ADD, entity1);
+        assertEquals(2, this.table.size());
+        assertSame(entity1, this.table.getEntity(1));
+    }
+
+    @Test
+    public void testAdd_UpdateThenRemove_MergedAsRemove() {
+        Object entity = new Object();
+        this.table.add(ManagerEvent.UPDATE, entity);
+        this.table.add(ManagerEvent.UPDATE, entity);
+        assertEquals(1, this.table.size());
+        this.table.add(ManagerEvent.REMOVE, entity);
+        assertEquals(1, this.table.size());
+        assertEquals(ManagerEvent.REMOVE, this.table.getType(0));
+    }
+
+    @Test
+    public void testAdd_WithManyEntities_KeepOrder() {
+        Object[] entities = new Object[1000];
+        for (int i = 0; i < entities.length; i++) {
+            entities[i] = new Object();
+            this.table.add(ManagerEvent.ADD, entities[i]);
+        }
+        for (int i = 0; i < entities.length; i += 2) {
+            this.table.add(ManagerEvent.REMOVE, entities[i]);
+        }
+        for (int i = 0; i < entities.length; i++) {
+            this.table.add(ManagerEvent.UPDATE, entities[i]);
+        }
+        assertEquals(1000, this.table.size());
+        for (int i = 0; i < 500; i++) {
+            assertSame(entities[i * 2 + 1], this.table.getEntity(i));
+            assertEquals(ManagerEvent.ADD, this.table.getType(i));
+            assertSame(entities[i * 2], this.table.getEntity(500 + i));
+            assertEquals(ManagerEvent.UPDATE, this.table.getType(500 + i));
+        }
+    }
+
+    @Test
+    public void testAdd_UpdateTwice_MergeProperties() {
+        Object entity = new Object();
+        this.table.add(ManagerEvent.UPDATE, entity, new String[] { "a" });
+        this.table.add(ManagerEvent.UPDATE, entity, new String[] { "b", "a" });
+        assertArrayEquals(new String[] { "a", "b" }, this.table.getProperties(0));
+
+        this.table.add(ManagerEvent.UPDATE, entity, null);
+        assertNull(this.table.getProperties(0));
+    }
+
+}
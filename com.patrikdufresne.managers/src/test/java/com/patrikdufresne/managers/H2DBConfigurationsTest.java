@@ -22,6 +22,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 
 import org.hibernate.cfg.Configuration;
+import org.hibernate.cfg.Environment;
 import org.junit.Test;
 
 /**
@@ -57,6 +58,22 @@ public class H2DBConfigurationsTest {
         }
     }
 
+    @Test
+    public void testCreate_ExpectBatching() throws IOException {
+        Configuration config = H2DBConfigurations.create("jdbc:h2:mem:unittest" + System.nanoTime(), true, false);
+        assertEquals(Integer.toString(H2DBConfigurations.DEFAULT_BATCH_SIZE), config.getProperty(Environment.STATEMENT_BATCH_SIZE));
+        assertEquals("true", config.getProperty(Environment.ORDER_INSERTS));
+        assertEquals("true", config.getProperty(Environment.ORDER_UPDATES));
+    }
+
+    @Test
+    public void testConfigureBatching_WithZero_DisableBatching() throws IOException {
+        Configuration config = H2DBConfigurations.create("jdbc:h2:mem:unittest" + System.nanoTime(), true, false);
+        H2DBConfigurations.configureBatching(config, 0);
+        assertEquals("0", config.getProperty(Environment.STATEMENT_BATCH_SIZE));
+        assertEquals("false", config.getProperty(Environment.ORDER_INSERTS));
+    }
+
     @Test(expected = FileNotFoundException.class)
     public void testGetServerUrl_WithInvalidFile() throws ManagerException, IOException {
         String url = "test-" + System.nanoTime();
@@ -0,0 +1,120 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.managers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.patrikdufresne.managers.LocalRegionFactory.LocalRegion;
+
+/**
+ * Check behavior of {@link LocalRegionFactory}.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+public class LocalRegionFactoryTest {
+
+    private MockManagers managers;
+
+    private LocalRegion region;
+
+    @Before
+    public void setupDatabase() throws Exception {
+        Configuration config = H2DBConfigurations.create("jdbc:h2:mem:unittest" + System.nanoTime(), true, false);
+        LocalRegionFactory.enable(config);
+        LocalRegionFactory.cache(config, MockEntity.class, 2);
+        this.managers = new MockManagers(config);
+        LocalRegionFactory factory = (LocalRegionFactory) ((SessionFactoryImplementor) this.managers.getSessionFactory()).getSettings().getRegionFactory();
+        this.region = factory.getRegion(MockEntity.class.getName());
+    }
+
+    @After
+    public void closeDatabase() throws Exception {
+        this.managers.dispose();
+    }
+
+    private MockEntity addEntity(String name) throws ManagerException {
+        MockEntity entity = new MockEntity();
+        entity.setName(name);
+        this.managers.getMockEntityManager().add(Arrays.asList(entity));
+        return entity;
+    }
+
+    @Test
+    public void testGet_Twice_CacheHit() throws ManagerException {
+        MockEntity entity = addEntity("a");
+        long hit = this.region.getHitCount();
+
+        assertEquals("a", this.managers.getMockEntityManager().get(entity.getId().intValue()).getName());
+        assertEquals("a", this.managers.get(MockEntity.class, entity.getId()).getName());
+        assertEquals(hit + 2, this.region.getHitCount());
+    }
+
+    @Test
+    public void testGet_AfterUpdate_ReturnNewValue() throws ManagerException {
+        MockEntity entity = addEntity("a");
+        this.managers.getMockEntityManager().get(entity.getId().intValue());
+
+        entity.setName("b");
+        this.managers.updateAll(Arrays.asList(entity));
+        assertEquals(0, this.region.toMap().size());
+
+        MockEntity loaded = this.managers.getMockEntityManager().get(entity.getId().intValue());
+        assertEquals("b", loaded.getName());
+    }
+
+    @Test
+    public void testGet_AfterRemove_ReturnNull() throws ManagerException {
+        MockEntity entity = addEntity("a");
+        this.managers.getMockEntityManager().get(entity.getId().intValue());
+
+        this.managers.removeAll(Arrays.asList(entity));
+        assertNull(this.managers.getMockEntityManager().get(entity.getId().intValue()));
+    }
+
+    @Test
+    public void testAdd_MoreThanMaxEntries_EvictLeastRecentlyUsed() throws ManagerException {
+        addEntity("a");
+        addEntity("b");
+        addEntity("c");
+        assertEquals(2, this.region.getElementCountInMemory());
+    }
+
+    @Test
+    public void testPutFromLoad_WithLock() {
+        Object key = "key";
+        this.region.lock(key);
+        long before = this.region.nextTimestamp();
+        assertFalse(this.region.putValue(key, "value", before, false));
+
+        this.region.unlock(key);
+        assertFalse(this.region.putValue(key, "value", before, false));
+        assertTrue(this.region.putValue(key, "value", this.region.nextTimestamp(), false));
+        assertEquals("value", this.region.getValue(key));
+    }
+
+}
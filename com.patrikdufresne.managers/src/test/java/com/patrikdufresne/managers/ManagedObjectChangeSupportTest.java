@@ -0,0 +1,150 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.managers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeListenerProxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Check behavior of {@link ManagedObjectChangeSupport}.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+public class ManagedObjectChangeSupportTest {
+
+    /**
+     * Listener recording the received events.
+     */
+    private static class EventRecorder implements PropertyChangeListener {
+
+        List<PropertyChangeEvent> events = new ArrayList<PropertyChangeEvent>();
+
+        @Override
+        public void propertyChange(PropertyChangeEvent evt) {
+            this.events.add(evt);
+        }
+
+    }
+
+    private ManagedObjectChangeSupport support = new ManagedObjectChangeSupport(new Object());
+
+    @Test
+    public void testFirePropertyChange_WithNamedListener_SendToMatchingListeners() {
+        EventRecorder all = new EventRecorder();
+        EventRecorder name = new EventRecorder();
+        EventRecorder other = new EventRecorder();
+        this.support.addPropertyChangeListener(all);
+        this.support.addPropertyChangeListener("name", name);
+        this.support.addPropertyChangeListener(new String("other"), other);
+
+        this.support.firePropertyChange("name", "a", "b");
+        this.support.firePropertyChange("count", 1, 2);
+        this.support.firePropertyChange("other", true, false);
+
+        assertEquals(3, all.events.size());
+        assertEquals(1, name.events.size());
+        assertEquals("b", name.events.get(0).getNewValue());
+        assertEquals(1, other.events.size());
+    }
+
+    @Test
+    public void testFirePropertyChange_WithSameValue_NotSent() {
+        EventRecorder all = new EventRecorder();
+        this.support.addPropertyChangeListener(all);
+
+        this.support.firePropertyChange("name", "a", "a");
+        this.support.firePropertyChange("count", 1, 1);
+        assertEquals(0, all.events.size());
+    }
+
+    @Test
+    public void testRemovePropertyChangeListener_WhileSending_NotifyCurrentListeners() {
+        final EventRecorder name = new EventRecorder();
+        this.support.addPropertyChangeListener("name", new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                ManagedObjectChangeSupportTest.this.support.removePropertyChangeListener("name", this);
+                ManagedObjectChangeSupportTest.this.support.removePropertyChangeListener("name", name);
+            }
+        });
+        this.support.addPropertyChangeListener("name", name);
+        assertTrue(this.support.hasListeners("name"));
+
+        this.support.firePropertyChange("name", "a", "b");
+        assertEquals(1, name.events.size());
+        assertFalse(this.support.hasListeners("name"));
+
+        this.support.firePropertyChange("name", "b", "c");
+        assertEquals(1, name.events.size());
+    }
+
+    @Test
+    public void testGetPropertyChangeListeners_WithNamedListener_ReturnProxy() {
+        EventRecorder all = new EventRecorder();
+        EventRecorder name = new EventRecorder();
+        this.support.addPropertyChangeListener(all);
+        this.support.addPropertyChangeListener("name", name);
+
+        PropertyChangeListener[] listeners = this.support.getPropertyChangeListeners();
+        assertEquals(2, listeners.length);
+        assertEquals(all, listeners[0]);
+        assertEquals("name", ((PropertyChangeListenerProxy) listeners[1]).getPropertyName());
+        assertEquals(1, this.support.getPropertyChangeListeners("name").length);
+        assertEquals(0, this.support.getPropertyChangeListeners("other").length);
+
+        this.support.removePropertyChangeListener(listeners[1]);
+        this.support.removePropertyChangeListener(all);
+        assertFalse(this.support.hasListeners("name"));
+    }
+
+    @Test
+    public void testResume_WithManyChanges_CoalescePerProperty() {
+        EventRecorder all = new EventRecorder();
+        this.support.addPropertyChangeListener(all);
+
+        this.support.suspend();
+        this.support.firePropertyChange("name", "a", "b");
+        this.support.firePropertyChange("count", 1, 2);
+        this.support.firePropertyChange("name", "b", "c");
+        this.support.firePropertyChange("count", 2, 1);
+        for (int i = 0; i < 10; i++) {
+            this.support.firePropertyChange("p" + i, null, "v");
+        }
+        assertEquals(0, all.events.size());
+        this.support.resume();
+
+        assertEquals(11, all.events.size());
+        assertEquals("name", all.events.get(0).getPropertyName());
+        assertEquals("a", all.events.get(0).getOldValue());
+        assertEquals("c", all.events.get(0).getNewValue());
+        assertEquals("p9", all.events.get(10).getPropertyName());
+
+        // Not suspended anymore
+        this.support.firePropertyChange("name", "c", "d");
+        assertEquals(12, all.events.size());
+    }
+
+}
@@ -16,14 +16,36 @@
 package com.patrikdufresne.managers;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
+import java.beans.PropertyDescriptor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
 import java.util.Date;
 
 import org.junit.Test;
 
 public class ManagedObjectUtilsTest {
 
+    /**
+     * Subclass of an entity, not being an entity, without generated accessor.
+     */
+    public static class MockEntitySubclass extends MockEntity {
+
+        private String extra;
+
+        public String getExtra() {
+            return this.extra;
+        }
+
+        public void setExtra(String extra) {
+            this.extra = extra;
+        }
+
+    }
+
     @Test
     public void testCopyProperties() throws IllegalAccessException, InvocationTargetException {
         MockEntity o1 = new MockEntity();
@@ -55,4 +77,58 @@ public class ManagedObjectUtilsTest {
         assertEquals(Integer.valueOf(1), ManagedObjectUtils.readProperty(o1, "id"));
     }
 
+    @Test
+    public void testGetPropertyDescriptor_Twice_ReturnCachedDescriptor() {
+        PropertyDescriptor descriptor = ManagedObjectUtils.getPropertyDescriptor(MockEntity.class, "name");
+        assertEquals("name", descriptor.getName());
+        assertSame(descriptor, ManagedObjectUtils.getPropertyDescriptor(MockEntity.class, "name"));
+
+        MockEntity o1 = new MockEntity();
+        ManagedObjectUtils.writeProperty(o1, descriptor, "value");
+        assertEquals("value", ManagedObjectUtils.readProperty(o1, descriptor));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetPropertyDescriptor_WithUnknownProperty_ThrowException() {
+        ManagedObjectUtils.getPropertyDescriptor(MockEntity.class, "unknown");
+    }
+
+    @Test
+    public void testGetGeneratedAccessor_WithEntity_ReturnAccessor() {
+        ManagedObjectAccessor accessor = ManagedObjectUtils.getGeneratedAccessor(MockEntity.class);
+        assertNotNull(accessor);
+        assertEquals(Arrays.asList("archivedDate", "creationDate", "id", "items", "modificationDate", "name"), Arrays.asList(accessor.getPropertyNames()));
+    }
+
+    @Test
+    public void testCopyProperties_WithoutGeneratedAccessor_UseIntrospector() throws IllegalAccessException, InvocationTargetException {
+        assertNull(ManagedObjectUtils.getGeneratedAccessor(ManagedObject.class));
+        ManagedObject o1 = new ManagedObject();
+        o1.setId(1);
+        o1.setCreationDate(new Date());
+
+        ManagedObject o2 = new ManagedObject();
+        ManagedObjectUtils.copyProperties(o1, o2);
+
+        assertEquals(o1.getId(), o2.getId());
+        assertEquals(o1.getCreationDate(), o2.getCreationDate());
+        assertEquals(Integer.valueOf(1), ManagedObjectUtils.readProperty(o2, "id"));
+    }
+
+    @Test
+    public void testCopyProperties_WithSubclassWithoutGeneratedAccessor_UseIntrospector() throws IllegalAccessException, InvocationTargetException {
+        assertNull(ManagedObjectUtils.getGeneratedAccessor(MockEntitySubclass.class));
+        MockEntitySubclass o1 = new MockEntitySubclass();
+        o1.setName("value");
+        o1.setExtra("extra");
+
+        MockEntitySubclass o2 = new MockEntitySubclass();
+        ManagedObjectUtils.copyProperties(o1, o2);
+        assertEquals("value", o2.getName());
+        assertEquals("extra", o2.getExtra());
+
+        ManagedObjectUtils.writeProperty(o2, "extra", "other");
+        assertEquals("other", ManagedObjectUtils.readProperty(o2, "extra"));
+    }
+
 }
@@ -17,12 +17,22 @@ package com.patrikdufresne.managers;
 
 import static org.junit.Assert.*;
 
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import javax.transaction.Synchronization;
+
+import org.hibernate.FlushMode;
 import org.hibernate.Session;
 import org.hibernate.TransactionException;
+import org.hibernate.stat.Statistics;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -70,6 +80,792 @@ public class ManagersTest extends AbstractManagerTest {
 
     }
 
+    /**
+     * Check if adding, updating and removing more entities than the JDBC batch size still generate one event per
+     * operation holding every entities and are written using one statement per batch.
+     * 
+     * @throws ManagerException
+     */
+    @Test
+    public void testAddUpdateRemove_WithManyEntities_ExpectEvents() throws ManagerException {
+        ManagerEventCounter counter = new ManagerEventCounter();
+        getManagers().getMockEntityManager().addObserver(ManagerEvent.ALL, counter);
+
+        int count = H2DBConfigurations.DEFAULT_BATCH_SIZE * 2 + 1;
+        int batches = 3;
+        List<MockEntity> entities = new ArrayList<MockEntity>();
+        for (int i = 0; i < count; i++) {
+            MockEntity entity = new MockEntity();
+            entity.setName("a" + i);
+            entities.add(entity);
+        }
+        Statistics stats = getManagers().getSessionFactory().getStatistics();
+        stats.setStatisticsEnabled(true);
+        stats.clear();
+        getManagers().getMockEntityManager().add(entities);
+        assertTrue("Statements not batched", stats.getPrepareStatementCount() <= batches);
+        assertEquals(count, getManagers().getMockEntityManager().list().size());
+        assertEquals(1, counter.size());
+        assertEquals(count, counter.getEvents().get(0).objects.size());
+
+        for (MockEntity entity : entities) {
+            entity.setName("b");
+        }
+        stats.clear();
+        getManagers().updateAll(entities);
+        assertTrue("Statements not batched", stats.getPrepareStatementCount() <= batches);
+        assertEquals(2, counter.size());
+        assertEquals(ManagerEvent.UPDATE, counter.getEvents().get(1).type);
+        assertEquals(count, counter.getEvents().get(1).objects.size());
+        assertEquals("b", getManagers().getMockEntityManager().get(entities.get(count - 1).getId().intValue()).getName());
+
+        stats.clear();
+        getManagers().removeAll(entities);
+        assertTrue("Statements not batched", stats.getPrepareStatementCount() <= batches);
+        assertEquals(0, getManagers().getMockEntityManager().list().size());
+        assertEquals(3, counter.size());
+        assertEquals(count, counter.getEvents().get(2).objects.size());
+    }
+
+    /**
+     * Check if bulk add insert every entities and send a single event.
+     * 
+     * @throws ManagerException
+     */
+    @Test
+    public void testBulkAdd_WithManyEntities_ExpectOneEvent() throws ManagerException {
+        ManagerEventCounter counter = new ManagerEventCounter();
+        getManagers().getMockEntityManager().addObserver(ManagerEvent.ALL, counter);
+
+        int count = H2DBConfigurations.DEFAULT_BATCH_SIZE * 2 + 1;
+        List<MockEntity> entities = new ArrayList<MockEntity>();
+        for (int i = 0; i < count; i++) {
+            MockEntity entity = new MockEntity();
+            entity.setName("a" + i);
+            entities.add(entity);
+        }
+        getManagers().getMockEntityManager().bulkAdd(entities);
+
+        assertEquals(1, counter.size());
+        assertEquals(ManagerEvent.ADD, counter.getEvents().get(0).type);
+        assertEquals(count, counter.getEvents().get(0).objects.size());
+        assertEquals(count, getManagers().getMockEntityManager().size());
+        MockEntity last = entities.get(count - 1);
+        assertNotNull(last.getId());
+        assertNotNull(last.getCreationDate());
+        assertEquals("a" + (count - 1), getManagers().getMockEntityManager().get(last.getId().intValue()).getName());
+    }
+
+    /**
+     * Check if bulk add rollback the inserted entities when an error occurred.
+     */
+    @Test
+    public void testBulkAdd_WithInvalidEntity_Rollback() {
+        ManagerEventCounter counter = new ManagerEventCounter();
+        getManagers().getMockEntityManager().addObserver(ManagerEvent.ALL, counter);
+
+        MockEntity entity = new MockEntity();
+        entity.setName("a");
+        List<MockEntity> list = Arrays.asList(entity, null);
+        try {
+            getManagers().getMockEntityManager().bulkAdd(list);
+            Assert.fail("Expecting exception");
+        } catch (Exception e) {
+            // Expected
+        }
+        assertEquals(0, counter.size());
+        try {
+            assertEquals(0, getManagers().getMockEntityManager().size());
+        } catch (ManagerException e) {
+            fail("Fail to get size", e);
+        }
+    }
+
+    /**
+     * Check if forEach visit every un-archived entities and evict them from the session.
+     * 
+     * @throws ManagerException
+     */
+    @Test
+    public void testForEach_WithArchivedObject() throws ManagerException {
+        final MockEntity entity1 = addEntity();
+        final MockEntity entity2 = addEntity();
+        MockEntity entity3 = addEntity();
+        getManagers().getMockEntityManager().archive(Arrays.asList(entity3));
+        getManagers().getMockEntityManager().setFetchSize(1);
+
+        final List<MockEntity> visited = new ArrayList<MockEntity>();
+        getManagers().getMockEntityManager().forEach(new IManagedObjectVisitor<MockEntity>() {
+            @Override
+            public void visit(MockEntity t) throws ManagerException {
+                for (MockEntity e : visited) {
+                    assertFalse(ManagerContext.getDefaultSession().contains(e));
+                }
+                visited.add(t);
+            }
+        });
+        assertEquals(Arrays.asList(entity1, entity2), visited);
+
+        visited.clear();
+        getManagers().getMockEntityManager().forEachArchived(new IManagedObjectVisitor<MockEntity>() {
+            @Override
+            public void visit(MockEntity t) throws ManagerException {
+                visited.add(t);
+            }
+        });
+        assertEquals(Arrays.asList(entity3), visited);
+    }
+
+    /**
+     * Check if an exception raised by the visitor stop the iteration.
+     * 
+     * @throws ManagerException
+     */
+    @Test(expected = ManagerException.class)
+    public void testForEach_WithManagerException() throws ManagerException {
+        addEntity();
+        addEntity();
+        getManagers().getMockEntityManager().forEach(new IManagedObjectVisitor<MockEntity>() {
+            @Override
+            public void visit(MockEntity t) throws ManagerException {
+                throw new ManagerException("stop");
+            }
+        });
+    }
+
+    /**
+     * Check if forEach and forEachArchived visit the entities within a read-only transaction.
+     * 
+     * @throws ManagerException
+     */
+    @Test
+    public void testForEach_ReadOnlyTransaction() throws ManagerException {
+        addEntity();
+        MockEntity archived = addEntity();
+        getManagers().getMockEntityManager().archive(Arrays.asList(archived));
+
+        final List<MockEntity> visited = new ArrayList<MockEntity>();
+        IManagedObjectVisitor<MockEntity> visitor = new IManagedObjectVisitor<MockEntity>() {
+            @Override
+            public void visit(MockEntity t) throws ManagerException {
+                assertTrue(ManagerContext.getDefaultSession().isDefaultReadOnly());
+                assertTrue(ManagerContext.getDefaultSession().isReadOnly(t));
+                visited.add(t);
+            }
+        };
+        getManagers().getMockEntityManager().forEach(visitor);
+        getManagers().getMockEntityManager().forEachArchived(visitor);
+        assertEquals(2, visited.size());
+    }
+
+    /**
+     * Check if forEach called within a transaction keeps the objects already loaded by that transaction in its
+     * session.
+     * 
+     * @throws ManagerException
+     */
+    @Test
+    public void testForEach_WithinTransaction_KeepLoadedEntities() throws ManagerException {
+        final MockEntity entity = addEntity();
+        getManagers().exec(new Exec() {
+            @Override
+            public void run() throws ManagerException {
+                MockEntity loaded = getManagers().getMockEntityManager().get(entity.getId());
+                getManagers().getMockEntityManager().forEach(new IManagedObjectVisitor<MockEntity>() {
+                    @Override
+                    public void visit(MockEntity t) throws ManagerException {
+                        // Nothing to do
+                    }
+                });
+                assertTrue(ManagerContext.getDefaultSession().contains(loaded));
+                loaded.setName("changed");
+            }
+        });
+        assertEquals("changed", getManagers().getMockEntityManager().get(entity.getId()).getName());
+    }
+
+    /**
+     * Check if the pages returned by the paginated list are contiguous and exclude archived entities.
+     * 
+     * @throws ManagerException
+     */
+    @Test
+    public void testListPage_WithId() throws ManagerException {
+        List<MockEntity> entities = new ArrayList<MockEntity>();
+        for (int i = 0; i < 5; i++) {
+            entities.add(addEntity());
+        }
+        getManagers().getMockEntityManager().archive(Arrays.asList(entities.get(2)));
+
+        List<MockEntity> page1 = getManagers().getMockEntityManager().list(null, 2, true);
+        assertEquals(Arrays.asList(entities.get(0), entities.get(1)), page1);
+        List<MockEntity> page2 = getManagers().getMockEntityManager().list(page1.get(1).getId(), 2, true);
+        assertEquals(Arrays.asList(entities.get(3), entities.get(4)), page2);
+        List<MockEntity> page3 = getManagers().getMockEntityManager().list(page2.get(1).getId(), 2, true);
+        assertEquals(0, page3.size());
+
+        List<MockEntity> desc = getManagers().getMockEntityManager().list(entities.get(4).getId(), 2, false);
+        assertEquals(Arrays.asList(entities.get(3), entities.get(1)), desc);
+    }
+
+    /**
+     * Check the paginated list sorted by a property with duplicate values.
+     * 
+     * @throws ManagerException
+     */
+    @Test
+    public void testListPage_WithProperty() throws ManagerException {
+        String[] names = new String[] { "b", "a", "b", "c", "a" };
+        List<MockEntity> entities = new ArrayList<MockEntity>();
+        for (String name : names) {
+            MockEntity entity = new MockEntity();
+            entity.setName(name);
+            entities.add(entity);
+        }
+        getManagers().getMockEntityManager().add(entities);
+
+        List<MockEntity> page1 = getManagers().getMockEntityManager().list("name", null, null, 3, true);
+        assertEquals(Arrays.asList(entities.get(1), entities.get(4), entities.get(0)), page1);
+        MockEntity last = page1.get(2);
+        List<MockEntity> page2 = getManagers().getMockEntityManager().list("name", last.getName(), last.getId(), 3, true);
+        assertEquals(Arrays.asList(entities.get(2), entities.get(3)), page2);
+    }
+
+    /**
+     * Check if the paginated list refuse a property value without identifier.
+     * 
+     * @throws ManagerException
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testListPage_WithPropertyValueWithoutId() throws ManagerException {
+        getManagers().getMockEntityManager().list("name", "a", null, 3, true);
+    }
+
+    /**
+     * Check if the cached size may be invalidated or disabled to see a bulk SQL statement.
+     * 
+     * @throws ManagerException
+     */
+    @Test
+    public void testSize_WithBulkStatement_InvalidateCache() throws ManagerException {
+        MockEntityManager manager = getManagers().getMockEntityManager();
+        addEntity();
+        assertEquals(1, manager.size());
+        getManagers().exec(new Exec() {
+            @Override
+            public void run() throws ManagerException {
+                ManagerContext.getDefaultSession().createSQLQuery("INSERT INTO MockEntity (id, name) VALUES (100, 'b')").executeUpdate();
+            }
+        });
+        assertEquals(1, manager.size());
+
+        manager.invalidateCache();
+        assertEquals(2, manager.size());
+
+        manager.setSizeCacheEnabled(false);
+        getManagers().exec(new Exec() {
+            @Override
+            public void run() throws ManagerException {
+                ManagerContext.getDefaultSession().createSQLQuery("DELETE FROM MockEntity WHERE id = 100").executeUpdate();
+            }
+        });
+        assertEquals(1, manager.size());
+        assertEquals(0, manager.sizeArchived());
+    }
+
+    /**
+     * Check if the cached size is maintained by add, archive and remove.
+     * 
+     * @throws ManagerException
+     */
+    @Test
+    public void testSize_WithModifications() throws ManagerException {
+        MockEntityManager manager = getManagers().getMockEntityManager();
+        assertEquals(0, manager.size());
+        assertEquals(0, manager.sizeArchived());
+
+        MockEntity entity1 = addEntity();
+        MockEntity entity2 = addEntity();
+        addEntity();
+        assertEquals(3, manager.size());
+
+        manager.archive(Arrays.asList(entity1));
+        assertEquals(2, manager.size());
+        assertEquals(1, manager.sizeArchived());
+
+        manager.remove(Arrays.asList(entity2));
+        assertEquals(1, manager.size());
+        assertEquals(1, manager.sizeArchived());
+
+        manager.bulkAdd(Arrays.asList(new MockEntity(), new MockEntity()));
+        assertEquals(3, manager.size());
+    }
+
+    /**
+     * Check if the list cache return the same snapshot until the entities are modified.
+     * 
+     * @throws ManagerException
+     */
+    @Test
+    public void testList_WithListCache_InvalidatedByEvents() throws ManagerException {
+        MockEntityManager manager = getManagers().getMockEntityManager();
+        assertFalse(manager.isListCacheEnabled());
+        manager.setListCacheEnabled(true);
+
+        MockEntity entity = addEntity();
+        List<MockEntity> list1 = manager.list();
+        assertEquals(1, list1.size());
+        assertSame(list1, manager.list());
+        assertEquals(1, manager.getListCacheHitCount());
+        assertEquals(1, manager.getListCacheMissCount());
+
+        entity.setName("b");
+        manager.update(Arrays.asList(entity));
+        List<MockEntity> list2 = manager.list();
+        assertNotSame(list1, list2);
+        assertEquals("b", list2.get(0).getName());
+
+        manager.archive(Arrays.asList(entity));
+        assertEquals(0, manager.list().size());
+        assertEquals(1, manager.listArchived().size());
+        assertSame(manager.listArchived(), manager.listArchived());
+
+        addEntity();
+        assertEquals(1, manager.list().size());
+        assertEquals(4, manager.getListCacheMissCount());
+    }
+
+    /**
+     * Check if the writer return before the events are sent when the asynchronous dispatch is enabled.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testAdd_WithAsyncDispatch_ReturnBeforeEvents() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final ManagerEventCounter counter = new ManagerEventCounter();
+        final Thread[] threads = new Thread[1];
+        getManagers().setAsyncDispatch(true);
+        getManagers().addObserver(ManagerEvent.ALL, MockEntity.class, new IManagerObserver() {
+            @Override
+            public void handleManagerEvent(ManagerEvent event) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                threads[0] = Thread.currentThread();
+                counter.handleManagerEvent(event);
+            }
+        });
+
+        MockEntity entity = addEntity();
+        assertEquals(0, counter.size());
+        release.countDown();
+        entity.setName("b");
+        getManagers().getMockEntityManager().update(Arrays.asList(entity));
+        getManagers().getMockEntityManager().remove(Arrays.asList(entity));
+        getManagers().flushEvents();
+
+        assertEquals(3, counter.size());
+        assertEquals(ManagerEvent.ADD, counter.getEvents().get(0).type);
+        assertEquals(ManagerEvent.UPDATE, counter.getEvents().get(1).type);
+        assertEquals(ManagerEvent.REMOVE, counter.getEvents().get(2).type);
+        assertNotSame(Thread.currentThread(), threads[0]);
+        assertEquals(0, getManagers().getMockEntityManager().size());
+    }
+
+    /**
+     * Check if the events of two concurrent writers are sent in the order the transactions are committed when the
+     * asynchronous dispatch is enabled.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testAdd_WithAsyncDispatchAndConcurrentWriters_EventsInCommitOrder() throws Exception {
+        final List<Object> committed = Collections.synchronizedList(new ArrayList<Object>());
+        final List<Object> notified = new ArrayList<Object>();
+        getManagers().addObserver(ManagerEvent.ADD, MockEntity.class, new IManagerObserver() {
+            @Override
+            public void handleManagerEvent(ManagerEvent event) {
+                notified.addAll(event.objects);
+            }
+        });
+        getManagers().setAsyncDispatch(true);
+
+        final int count = 200;
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        Runnable writer = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        final MockEntity entity = new MockEntity();
+                        getManagers().exec(new Exec() {
+                            @Override
+                            public void run() throws ManagerException {
+                                getManagers().getMockEntityManager().add(Arrays.asList(entity));
+                                ManagerContext.getDefaultSession().getTransaction().registerSynchronization(new Synchronization() {
+                                    @Override
+                                    public void beforeCompletion() {
+                                        // Nothing to do
+                                    }
+
+                                    @Override
+                                    public void afterCompletion(int status) {
+                                        committed.add(entity);
+                                    }
+                                });
+                            }
+                        });
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }
+        };
+        Thread thread1 = new Thread(writer);
+        Thread thread2 = new Thread(writer);
+        thread1.start();
+        thread2.start();
+        thread1.join();
+        thread2.join();
+        getManagers().flushEvents();
+
+        assertEquals(Collections.emptyList(), errors);
+        assertEquals(count * 2, notified.size());
+        assertEquals(committed, notified);
+    }
+
+    /**
+     * Check if the exception raised by an observer called asynchronously is thrown by flushEvents.
+     * 
+     * @throws ManagerException
+     */
+    @Test
+    public void testFlushEvents_WithFailingObserver_ThrowException() throws ManagerException {
+        final IllegalStateException failure = new IllegalStateException();
+        getManagers().addObserver(ManagerEvent.ADD, MockEntity.class, new IManagerObserver() {
+            @Override
+            public void handleManagerEvent(ManagerEvent event) {
+                throw failure;
+            }
+        });
+        getManagers().setAsyncDispatch(true);
+        addEntity();
+        addEntity();
+        try {
+            getManagers().flushEvents();
+            Assert.fail("Expecting exception");
+        } catch (IllegalStateException e) {
+            assertSame(failure, e);
+        }
+        // Thrown once
+        getManagers().flushEvents();
+    }
+
+    /**
+     * Check if disabling the asynchronous dispatch send the pending events.
+     * 
+     * @throws ManagerException
+     */
+    @Test
+    public void testSetAsyncDispatch_Disable_SendPendingEvents() throws ManagerException {
+        ManagerEventCounter counter = new ManagerEventCounter();
+        getManagers().addObserver(ManagerEvent.ALL, MockEntity.class, counter);
+        getManagers().setAsyncDispatch(true);
+        assertTrue(getManagers().isAsyncDispatch());
+        addEntity();
+        addEntity();
+        getManagers().setAsyncDispatch(false);
+        assertFalse(getManagers().isAsyncDispatch());
+        assertEquals(2, counter.size());
+    }
+
+    /**
+     * Check if an entity modified many times within a transaction is notified once.
+     * 
+     * @throws ManagerException
+     */
+    @Test
+    public void testUpdate_ManyTimesWithinTransaction_NotifiedOnce() throws ManagerException {
+        final MockEntityManager manager = getManagers().getMockEntityManager();
+        final MockEntity entity = addEntity();
+        ManagerEventCounter counter = new ManagerEventCounter();
+        getManagers().addObserver(ManagerEvent.ALL, MockEntity.class, counter);
+        getManagers().exec(new Exec() {
+            @Override
+            public void run() throws ManagerException {
+                for (int i = 0; i < 3; i++) {
+                    entity.setName("b" + i);
+                    manager.update(Arrays.asList(entity));
+                    ManagerContext.getDefaultSession().flush();
+                }
+                MockEntity added = new MockEntity();
+                manager.add(Arrays.asList(added));
+                added.setName("c");
+                manager.update(Arrays.asList(added));
+                ManagerContext.getDefaultSession().flush();
+                MockEntity removed = new MockEntity();
+                manager.add(Arrays.asList(removed));
+                manager.remove(Arrays.asList(removed));
+            }
+        });
+        assertEquals(2, counter.size());
+        assertEquals(ManagerEvent.UPDATE, counter.getEvents().get(0).type);
+        assertEquals(Arrays.asList(entity), counter.getEvents().get(0).objects);
+        assertEquals(ManagerEvent.ADD, counter.getEvents().get(1).type);
+        assertEquals(1, counter.getEvents().get(1).objects.size());
+        assertEquals(2, manager.size());
+    }
+
+    /**
+     * Check if the update event hold the dirty properties and if the observers are notified only for their
+     * properties.
+     * 
+     * @throws ManagerException
+     */
+    @Test
+    public void testUpdate_WithinSession_NotifyDirtyProperties() throws ManagerException {
+        final MockEntity entity = addEntity();
+        ManagerEventCounter all = new ManagerEventCounter();
+        ManagerEventCounter archived = new ManagerEventCounter();
+        getManagers().addObserver(ManagerEvent.UPDATE, MockEntity.class, all);
+        getManagers().addObserver(ManagerEvent.UPDATE, MockEntity.class, new String[] { ArchivableObject.ARCHIVED_DATE }, archived);
+        getManagers().exec(new Exec() {
+            @Override
+            public void run() throws ManagerException {
+                MockEntity loaded = (MockEntity) ManagerContext.getDefaultSession().get(MockEntity.class, entity.getId());
+                loaded.setName("b");
+            }
+        });
+        assertEquals(1, all.size());
+        assertArrayEquals(new String[] { "name" }, all.getEvents().get(0).properties);
+        assertEquals(0, archived.size());
+
+        // Detached object: the properties are unknown
+        getManagers().getMockEntityManager().update(Arrays.asList(entity));
+        assertEquals(2, all.size());
+        assertNull(all.getEvents().get(1).properties);
+        assertEquals(1, archived.size());
+    }
+
+    /**
+     * Check if only the dirty properties and the collections are copied into the other instances of an updated entity.
+     * 
+     * @throws ManagerException
+     */
+    @Test
+    public void testUpdate_WithOtherInstance_CopyDirtyProperties() throws ManagerException {
+        final MockEntity entity = addEntity();
+        final Date archivedDate = new Date();
+        CustomListener listener = getManagers().getListener();
+        long copied = listener.getCopiedCount();
+        long skipped = listener.getSkippedCount();
+        getManagers().exec(new Exec() {
+            @Override
+            public void run() throws ManagerException {
+                MockEntity loaded = (MockEntity) ManagerContext.getDefaultSession().get(MockEntity.class, entity.getId());
+                assertNotSame(entity, loaded);
+                loaded.setName("b");
+                loaded.setArchivedDate(archivedDate);
+            }
+        });
+        assertEquals("b", entity.getName());
+        assertEquals(archivedDate, entity.getArchivedDate());
+        // name, archivedDate and items
+        assertEquals(copied + 3, listener.getCopiedCount());
+        assertTrue(listener.getSkippedCount() > skipped);
+
+        // Detached object: every properties are copied
+        MockEntity entity2 = addEntity();
+        MockEntity other = getManagers().getMockEntityManager().get(entity2.getId().intValue());
+        assertNotSame(entity2, other);
+        copied = listener.getCopiedCount();
+        getManagers().getMockEntityManager().update(Arrays.asList(other));
+        assertTrue(listener.getCopiedCount() > copied);
+    }
+
+    /**
+     * Check if a modified collection is copied into the other instances of an updated entity.
+     * 
+     * @throws ManagerException
+     */
+    @Test
+    public void testUpdate_WithOtherInstance_CopyCollection() throws ManagerException {
+        final MockEntity entity = addEntity();
+        getManagers().exec(new Exec() {
+            @Override
+            public void run() throws ManagerException {
+                MockEntity loaded = (MockEntity) ManagerContext.getDefaultSession().get(MockEntity.class, entity.getId());
+                loaded.getItems().add("x");
+                loaded.setName("b");
+            }
+        });
+        assertEquals("b", entity.getName());
+        assertEquals(Arrays.asList("x"), entity.getItems());
+    }
+
+    /**
+     * Check if the listeners of the other instances of an updated entity are notified once per changed property.
+     * 
+     * @throws ManagerException
+     */
+    @Test
+    public void testUpdate_WithOtherInstanceListener_NotifyOncePerProperty() throws ManagerException {
+        final MockEntity entity = addEntity();
+        assertFalse(entity.hasListeners(MockEntity.NAME));
+        final List<PropertyChangeEvent> events = new ArrayList<PropertyChangeEvent>();
+        entity.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                events.add(evt);
+            }
+        });
+        getManagers().exec(new Exec() {
+            @Override
+            public void run() throws ManagerException {
+                MockEntity loaded = (MockEntity) ManagerContext.getDefaultSession().get(MockEntity.class, entity.getId());
+                loaded.setName("b");
+            }
+        });
+        assertEquals(1, events.size());
+        assertEquals(MockEntity.NAME, events.get(0).getPropertyName());
+        assertEquals("b", events.get(0).getNewValue());
+    }
+
+    /**
+     * Check if the entities loaded by a read-only query are not dirty checked.
+     * 
+     * @throws ManagerException
+     */
+    @Test
+    public void testQueryReadOnly_WithModification_NotPersisted() throws ManagerException {
+        final MockEntity entity = addEntity();
+        ManagerEventCounter counter = new ManagerEventCounter();
+        getManagers().addObserver(ManagerEvent.ALL, MockEntity.class, counter);
+        getManagers().queryReadOnly(new Query<Object>() {
+            @Override
+            public Object run() throws ManagerException {
+                Session session = ManagerContext.getDefaultSession();
+                assertEquals(FlushMode.MANUAL, session.getFlushMode());
+                MockEntity loaded = (MockEntity) session.get(MockEntity.class, entity.getId());
+                assertTrue(session.isReadOnly(loaded));
+                loaded.setName("b");
+                return null;
+            }
+        });
+        assertEquals(0, counter.size());
+        assertEquals("a", getManagers().getMockEntityManager().get(entity.getId().intValue()).getName());
+
+        // The next transaction is not read-only
+        entity.setName("c");
+        getManagers().updateAll(Arrays.asList(entity));
+        assertEquals(1, counter.size());
+        assertEquals("c", getManagers().get(MockEntity.class, entity.getId()).getName());
+    }
+
+    /**
+     * Check if the list computed within a transaction rolled back is not kept.
+     * 
+     * @throws ManagerException
+     */
+    @Test
+    public void testList_WithListCacheWithinRollbackTransaction() throws ManagerException {
+        final MockEntityManager manager = getManagers().getMockEntityManager();
+        manager.setListCacheEnabled(true);
+        try {
+            getManagers().exec(new Exec() {
+                @Override
+                public void run() throws ManagerException {
+                    manager.add(Arrays.asList(new MockEntity()));
+                    assertEquals(1, manager.list().size());
+                    throw new ManagerException("rollback");
+                }
+            });
+        } catch (ManagerException e) {
+            // Expected
+        }
+        assertEquals(0, manager.list().size());
+    }
+
+    /**
+     * Check if the list computed within a transaction includes the uncommitted modifications even when the list is
+     * cached.
+     * 
+     * @throws ManagerException
+     */
+    @Test
+    public void testList_WithListCacheWithinTransaction_ListUncommitted() throws ManagerException {
+        final MockEntityManager manager = getManagers().getMockEntityManager();
+        manager.setListCacheEnabled(true);
+        final MockEntity entity = addEntity();
+        assertEquals(1, manager.list().size());
+        assertEquals(0, manager.listArchived().size());
+        getManagers().exec(new Exec() {
+            @Override
+            public void run() throws ManagerException {
+                manager.add(Arrays.asList(new MockEntity()));
+                assertEquals(2, manager.list().size());
+                // The listed instance is associated with the session
+                manager.archive(Arrays.asList(manager.get(entity.getId())));
+                assertEquals(1, manager.list().size());
+                assertEquals(1, manager.listArchived().size());
+            }
+        });
+        assertEquals(1, manager.list().size());
+        assertEquals(1, manager.listArchived().size());
+    }
+
+    /**
+     * Check if the size computed within a transaction rolled back is not kept.
+     * 
+     * @throws ManagerException
+     */
+    @Test
+    public void testSize_WithinRollbackTransaction() throws ManagerException {
+        final MockEntityManager manager = getManagers().getMockEntityManager();
+        try {
+            getManagers().exec(new Exec() {
+                @Override
+                public void run() throws ManagerException {
+                    manager.add(Arrays.asList(new MockEntity()));
+                    assertEquals(1, manager.size());
+                    throw new ManagerException("rollback");
+                }
+            });
+        } catch (ManagerException e) {
+            // Expected
+        }
+        assertEquals(0, manager.size());
+    }
+
+    /**
+     * Check if the size computed within a transaction counts the uncommitted modifications even when the size is
+     * cached.
+     * 
+     * @throws ManagerException
+     */
+    @Test
+    public void testSize_WithinTransaction_CountUncommitted() throws ManagerException {
+        final MockEntityManager manager = getManagers().getMockEntityManager();
+        final MockEntity entity = addEntity();
+        assertEquals(1, manager.size());
+        assertEquals(0, manager.sizeArchived());
+        getManagers().exec(new Exec() {
+            @Override
+            public void run() throws ManagerException {
+                manager.add(Arrays.asList(new MockEntity()));
+                assertEquals(2, manager.size());
+                manager.archive(Arrays.asList(entity));
+                assertEquals(1, manager.size());
+                assertEquals(1, manager.sizeArchived());
+            }
+        });
+        assertEquals(1, manager.size());
+        assertEquals(1, manager.sizeArchived());
+    }
+
     /**
      * Test if the archive function set the archive date and send an event.
      * 
@@ -61,7 +61,7 @@ public class MockEntity extends ArchivableObject {
     }
 
     public void setName(String value) {
-        changeSupport.firePropertyChange(NAME, this.name, this.name = value);
+        firePropertyChange(NAME, this.name, this.name = value);
     }
 
     @Transient
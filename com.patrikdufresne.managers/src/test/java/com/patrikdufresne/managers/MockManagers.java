@@ -57,10 +57,11 @@ public class MockManagers extends Managers {
         return mockEntityManager;
     }
 
+    @SuppressWarnings("unchecked")
     @Override
-    public IManager getManagerForClass(Class clazz) {
+    public IManager<ManagedObject> getManagerForClass(Class<? extends ManagedObject> clazz) {
         if (clazz.equals(MockEntity.class)) {
-            return getMockEntityManager();
+            return (IManager<ManagedObject>) (IManager<?>) getMockEntityManager();
         }
         return null;
 
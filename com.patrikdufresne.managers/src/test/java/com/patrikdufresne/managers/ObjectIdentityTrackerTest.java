@@ -16,9 +16,12 @@
 package com.patrikdufresne.managers;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -99,4 +102,99 @@ public class ObjectIdentityTrackerTest {
         finds = tracker.find("MockEntity", entity1.getId());
         assertTrue("Wrong number of object found.", finds == null || finds.size() == 0);
     }
+
+    @Test
+    public void testFind_WithManyIds_ReturnEntities() {
+        MockEntity[] entities = new MockEntity[1000];
+        for (int i = 0; i < entities.length; i++) {
+            entities[i] = new MockEntity();
+            entities[i].setId(Integer.valueOf(i));
+            tracker.register("MockEntity", entities[i].getId(), entities[i]);
+            tracker.register("MockEntity", entities[i].getId(), entities[i]);
+        }
+        assertEquals(1000, tracker.size());
+        assertEquals(1000, tracker.getIdCount());
+        for (int i = 0; i < entities.length; i += 2) {
+            tracker.unregister("MockEntity", Integer.valueOf(i));
+        }
+        assertEquals(500, tracker.getIdCount());
+        for (int i = 0; i < entities.length; i++) {
+            Collection<?> finds = tracker.find("MockEntity", Integer.valueOf(i));
+            assertEquals(i % 2, finds.size());
+            if (i % 2 == 1) {
+                assertSame(entities[i], finds.iterator().next());
+            }
+        }
+    }
+
+    @Test
+    public void testPurge_WithDisposedEntities_RemoveIds() throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            MockEntity entity = new MockEntity();
+            tracker.register("MockEntity", Integer.valueOf(i), entity);
+            tracker.register("MockEntity", Integer.valueOf(i), new MockEntity());
+        }
+        MockEntity kept = new MockEntity();
+        tracker.register("MockEntity", Integer.valueOf(1), kept);
+        for (int i = 0; i < 50 && tracker.size() > 1; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(1, tracker.size());
+        assertEquals(1, tracker.getIdCount());
+        assertEquals(200, tracker.getPurgedCount());
+        assertSame(kept, tracker.find("MockEntity", Integer.valueOf(1)).iterator().next());
+    }
+
+    @Test
+    public void testRegister_FromManyThreads_FindEntities() throws Exception {
+        final int threadCount = 8;
+        final int count = 5000;
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        final List<MockEntity> shared = new ArrayList<MockEntity>();
+        for (int t = 0; t < threadCount; t++) {
+            final MockEntity sharedEntity = new MockEntity();
+            shared.add(sharedEntity);
+            final int offset = t * count;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        List<MockEntity> entities = new ArrayList<MockEntity>();
+                        for (int i = 0; i < count; i++) {
+                            MockEntity entity = new MockEntity();
+                            entities.add(entity);
+                            tracker.register("MockEntity", Integer.valueOf(offset + i), entity);
+                            // Every thread register an instance with the same id
+                            tracker.register("MockEntity", Integer.valueOf(-1), sharedEntity);
+                        }
+                        for (int i = 0; i < count; i++) {
+                            Collection<?> finds = tracker.find("MockEntity", Integer.valueOf(offset + i));
+                            if (finds.size() != 1 || finds.iterator().next() != entities.get(i)) {
+                                throw new AssertionError("entity " + (offset + i) + " not found");
+                            }
+                            if (i % 2 == 0) {
+                                tracker.unregister("MockEntity", Integer.valueOf(offset + i));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            });
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(threadCount, tracker.find("MockEntity", Integer.valueOf(-1)).size());
+        assertEquals(threadCount * count / 2 + 1, tracker.getIdCount());
+    }
 }
@@ -0,0 +1,224 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.managers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.h2.Driver;
+import org.hibernate.cfg.Environment;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Check behavior of {@link PooledConnectionProvider}.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+public class PooledConnectionProviderTest {
+
+    private PooledConnectionProvider provider;
+
+    private Map<String, String> config;
+
+    @Before
+    public void createConfig() {
+        this.config = new HashMap<String, String>();
+        this.config.put(Environment.DRIVER, Driver.class.getCanonicalName());
+        this.config.put(Environment.URL, "jdbc:h2:mem:pooltest" + System.nanoTime());
+        this.config.put(Environment.USER, "sa");
+        this.config.put(Environment.PASS, "");
+        this.provider = new PooledConnectionProvider();
+    }
+
+    @After
+    public void stopProvider() {
+        this.provider.stop();
+    }
+
+    @Test
+    public void testGetConnection_AfterClose_ReuseConnection() throws SQLException {
+        this.provider.configure(this.config);
+
+        Connection conn1 = this.provider.getConnection();
+        Connection physical = conn1.unwrap(Connection.class);
+        assertEquals(1, this.provider.getActiveCount());
+        assertEquals(0, this.provider.getIdleCount());
+        this.provider.closeConnection(conn1);
+        assertEquals(0, this.provider.getActiveCount());
+        assertEquals(1, this.provider.getIdleCount());
+
+        Connection conn2 = this.provider.getConnection();
+        assertSame(physical, conn2.unwrap(Connection.class));
+        assertFalse(conn2.getAutoCommit());
+        this.provider.closeConnection(conn2);
+        assertEquals(2, this.provider.getBorrowCount());
+    }
+
+    @Test(expected = SQLException.class)
+    public void testGetConnection_WithExhaustedPool_Timeout() throws SQLException {
+        this.config.put(PooledConnectionProvider.MAX_SIZE, "1");
+        this.config.put(PooledConnectionProvider.BORROW_TIMEOUT, "100");
+        this.provider.configure(this.config);
+
+        this.provider.getConnection();
+        this.provider.getConnection();
+    }
+
+    @Test
+    public void testGetConnection_WithExhaustedPool_WaitForConnection() throws Exception {
+        this.config.put(PooledConnectionProvider.MAX_SIZE, "1");
+        this.provider.configure(this.config);
+
+        final Connection conn1 = this.provider.getConnection();
+        Connection physical = conn1.unwrap(Connection.class);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                    PooledConnectionProviderTest.this.provider.closeConnection(conn1);
+                } catch (Exception e) {
+                    // Nothing to do
+                }
+            }
+        });
+        thread.start();
+        Connection conn2 = this.provider.getConnection();
+        thread.join();
+        assertSame(physical, conn2.unwrap(Connection.class));
+        assertTrue(this.provider.getMaxBorrowWaitTime() > 0);
+    }
+
+    @Test
+    public void testGetConnection_WithBrokenConnection_OpenNewConnection() throws SQLException {
+        this.config.put(PooledConnectionProvider.MIN_SIZE, "0");
+        this.provider.configure(this.config);
+
+        Connection conn1 = this.provider.getConnection();
+        Connection physical = conn1.unwrap(Connection.class);
+        this.provider.closeConnection(conn1);
+        physical.close();
+
+        Connection conn2 = this.provider.getConnection();
+        assertNotSame(conn1, conn2);
+        assertFalse(conn2.isClosed());
+        this.provider.closeConnection(conn2);
+    }
+
+    @Test
+    public void testCloseConnection_WithPendingTransaction_Rollback() throws SQLException {
+        this.provider.configure(this.config);
+
+        Connection conn1 = this.provider.getConnection();
+        conn1.createStatement().execute("create table t (id int)");
+        conn1.commit();
+        conn1.createStatement().execute("insert into t values (1)");
+        this.provider.closeConnection(conn1);
+
+        Connection conn2 = this.provider.getConnection();
+        ResultSet rs = conn2.createStatement().executeQuery("select count(*) from t");
+        assertTrue(rs.next());
+        assertEquals(0, rs.getInt(1));
+        rs.close();
+        this.provider.closeConnection(conn2);
+    }
+
+    @Test
+    public void testCloseConnection_Twice_ProxyInvalidated() throws SQLException {
+        this.provider.configure(this.config);
+
+        Connection conn1 = this.provider.getConnection();
+        this.provider.closeConnection(conn1);
+        Connection conn2 = this.provider.getConnection();
+        assertNotSame(conn1, conn2);
+        assertTrue(conn1.isClosed());
+        assertFalse(conn2.isClosed());
+        try {
+            conn1.prepareStatement("select 1");
+            fail("Connection should be closed.");
+        } catch (SQLException e) {
+            // Expected
+        }
+        // Closing the stale proxy must not return the connection of the new borrower.
+        conn1.close();
+        assertEquals(1, this.provider.getActiveCount());
+        this.provider.closeConnection(conn2);
+        assertEquals(0, this.provider.getActiveCount());
+        assertEquals(1, this.provider.getIdleCount());
+    }
+
+    @Test
+    public void testPrepareStatement_Twice_ReturnCachedStatement() throws SQLException {
+        this.provider.configure(this.config);
+
+        Connection conn = this.provider.getConnection();
+        PreparedStatement stmt1 = conn.prepareStatement("select 1");
+        stmt1.executeQuery().close();
+        stmt1.close();
+        PreparedStatement stmt2 = conn.prepareStatement("select 1");
+        assertSame(stmt1, stmt2);
+        assertTrue(stmt2.executeQuery().next());
+        stmt2.close();
+        this.provider.closeConnection(conn);
+
+        assertEquals(1, this.provider.getStatementCacheHitCount());
+        assertEquals(1, this.provider.getStatementCacheMissCount());
+    }
+
+    @Test
+    public void testStop_WithIdleConnection_CloseConnection() throws SQLException {
+        this.provider.configure(this.config);
+
+        Connection conn = this.provider.getConnection();
+        Connection physical = conn.unwrap(Connection.class);
+        this.provider.closeConnection(conn);
+        this.provider.stop();
+
+        assertTrue(physical.isClosed());
+        assertEquals(0, this.provider.getIdleCount());
+    }
+
+    @Test
+    public void testGetConnectionPool_WithManagers_ReturnStatistics() throws Exception {
+        MockManagers managers = new MockManagers(H2DBConfigurations.create("jdbc:h2:mem:unittest" + System.nanoTime(), true, false));
+        try {
+            PooledConnectionProvider pool = managers.getConnectionPool();
+            assertNotNull(pool);
+            managers.getMockEntityManager().list();
+            assertTrue(pool.getBorrowCount() > 0);
+            assertEquals(0, pool.getActiveCount());
+            assertTrue(pool.getIdleCount() > 0);
+        } finally {
+            managers.dispose();
+        }
+    }
+
+}
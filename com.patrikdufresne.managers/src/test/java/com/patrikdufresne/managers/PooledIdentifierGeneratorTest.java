@@ -0,0 +1,188 @@
+/**
+ * Copyright(C) 2013 Patrik Dufresne Service Logiciel <info@patrikdufresne.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.patrikdufresne.managers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.hibernate.cfg.Configuration;
+import org.hibernate.cfg.Environment;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Check behavior of {@link PooledIdentifierGenerator}.
+ *
+ * @author Patrik Dufresne
+ *
+ */
+public class PooledIdentifierGeneratorTest {
+
+    private String url;
+
+    private MockManagers managers;
+
+    private MockManagers managers2;
+
+    @Before
+    public void setupDatabase() throws Exception {
+        this.url = "jdbc:h2:mem:unittest" + System.nanoTime();
+        this.managers = new MockManagers(H2DBConfigurations.create(this.url, true, false));
+    }
+
+    @After
+    public void closeDatabase() throws Exception {
+        if (this.managers2 != null) {
+            this.managers2.dispose();
+        }
+        this.managers.dispose();
+    }
+
+    /**
+     * Open a second managers on the same database without altering the schema.
+     */
+    private MockManagers openSecondManagers() throws Exception {
+        Configuration config = H2DBConfigurations.create(this.url, true, false);
+        config.setProperty(Environment.HBM2DDL_AUTO, "none");
+        this.managers2 = new MockManagers(config);
+        return this.managers2;
+    }
+
+    /**
+     * Return the generator used by the given managers.
+     */
+    private static PooledIdentifierGenerator getGenerator(MockManagers managers) throws ManagerException {
+        return managers.query(new Query<PooledIdentifierGenerator>() {
+            @Override
+            public PooledIdentifierGenerator run() throws ManagerException {
+                SessionFactoryImplementor factory = (SessionFactoryImplementor) ManagerContext.getDefaultSession().getSessionFactory();
+                return (PooledIdentifierGenerator) factory.getIdentifierGenerator(MockEntity.class.getName());
+            }
+        });
+    }
+
+    private static List<MockEntity> addEntities(MockManagers managers, int count) throws ManagerException {
+        List<MockEntity> list = new ArrayList<MockEntity>();
+        for (int i = 0; i < count; i++) {
+            MockEntity entity = new MockEntity();
+            entity.setName("a" + i);
+            list.add(entity);
+        }
+        managers.getMockEntityManager().add(list);
+        return list;
+    }
+
+    @Test
+    public void testAdd_WithManyEntities_ReserveRanges() throws ManagerException {
+        PooledIdentifierGenerator generator = getGenerator(this.managers);
+        int count = generator.getAllocationSize() * 2 + 1;
+        List<MockEntity> list = addEntities(this.managers, count);
+
+        Set<Integer> ids = new HashSet<Integer>();
+        for (MockEntity e : list) {
+            ids.add(e.getId());
+        }
+        assertEquals(count, ids.size());
+        assertEquals(Integer.valueOf(1), list.get(0).getId());
+        assertEquals(3, generator.getReservationCount());
+    }
+
+    @Test
+    public void testAdd_WithTwoManagers_UniqueIds() throws Exception {
+        openSecondManagers();
+        List<MockEntity> list1 = addEntities(this.managers, 1);
+        List<MockEntity> list2 = addEntities(this.managers2, 1);
+        List<MockEntity> list3 = addEntities(this.managers, 1);
+
+        assertEquals(3, this.managers.getMockEntityManager().list().size());
+        assertEquals(Integer.valueOf(list1.get(0).getId().intValue() + 1), list3.get(0).getId());
+        assertTrue(list2.get(0).getId().intValue() > list3.get(0).getId().intValue());
+    }
+
+    @Test
+    public void testAdd_WithoutSequence_StartAfterGreatestId() throws Exception {
+        addEntities(this.managers, 3);
+        this.managers.exec(new Exec() {
+            @Override
+            public void run() throws ManagerException {
+                ManagerContext.getDefaultSession().createSQLQuery("INSERT INTO MockEntity (id, name) VALUES (100, 'b')").executeUpdate();
+                ManagerContext.getDefaultSession().createSQLQuery("DROP SEQUENCE MockEntity_SEQ").executeUpdate();
+            }
+        });
+
+        List<MockEntity> list = addEntities(openSecondManagers(), 1);
+        assertEquals(Integer.valueOf(101), list.get(0).getId());
+        assertEquals(5, this.managers2.getMockEntityManager().list().size());
+    }
+
+    @Test
+    public void testAdd_WithUncommittedRow_StartAfterGreatestId() throws ManagerException {
+        final List<MockEntity> list = new ArrayList<MockEntity>();
+        this.managers.exec(new Exec() {
+            @Override
+            public void run() throws ManagerException {
+                ManagerContext.getDefaultSession().createSQLQuery("INSERT INTO MockEntity (id, name) VALUES (100, 'b')").executeUpdate();
+                list.addAll(addEntities(PooledIdentifierGeneratorTest.this.managers, 1));
+            }
+        });
+        assertEquals(Integer.valueOf(101), list.get(0).getId());
+        assertEquals(2, this.managers.getMockEntityManager().list().size());
+    }
+
+    @Test
+    public void testAdd_WithSchemaUpdate_StartAfterGreatestId() throws Exception {
+        addEntities(this.managers, 3);
+        this.managers.exec(new Exec() {
+            @Override
+            public void run() throws ManagerException {
+                ManagerContext.getDefaultSession().createSQLQuery("DROP SEQUENCE MockEntity_SEQ").executeUpdate();
+            }
+        });
+
+        Configuration config = H2DBConfigurations.create(this.url, true, false);
+        config.setProperty(Environment.HBM2DDL_AUTO, "update");
+        this.managers2 = new MockManagers(config);
+        List<MockEntity> list = addEntities(this.managers2, 1);
+        assertEquals(Integer.valueOf(4), list.get(0).getId());
+    }
+
+    @Test
+    public void testAdd_WithRollback_IdNotReused() throws ManagerException {
+        final MockEntity entity = new MockEntity();
+        try {
+            this.managers.exec(new Exec() {
+                @Override
+                public void run() throws ManagerException {
+                    PooledIdentifierGeneratorTest.this.managers.getMockEntityManager().add(Arrays.asList(entity));
+                    throw new ManagerException("rollback");
+                }
+            });
+        } catch (ManagerException e) {
+            // Expected
+        }
+        List<MockEntity> list = addEntities(this.managers, 1);
+        assertTrue(list.get(0).getId().intValue() > entity.getId().intValue());
+    }
+
+}